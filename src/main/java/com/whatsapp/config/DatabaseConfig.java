@@ -1,5 +1,6 @@
 package com.whatsapp.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -16,6 +17,15 @@ public class DatabaseConfig {
     @Value("${DATABASE_URL:}")
     private String databaseUrl;
 
+    @Value("${app.db.max-concurrency:0}")
+    private int maxConcurrency;
+
+    @Value("${app.db.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    @Value("${app.db.reserved-connections:2}")
+    private int reservedConnections;
+
     @Bean
     @Primary
     @ConfigurationProperties("spring.datasource")
@@ -92,6 +102,30 @@ public class DatabaseConfig {
     @Bean
     @Primary
     public DataSource dataSource(DataSourceProperties properties) {
-        return properties.initializeDataSourceBuilder().build();
+        DataSource dataSource = properties.initializeDataSourceBuilder().build();
+        if (dataSource instanceof HikariDataSource hikariDataSource) {
+            // Let the driver collapse Hibernate's JDBC insert batches into multi-row INSERTs
+            hikariDataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
+        }
+        if (maxConcurrency != 0) {
+            int poolSize = dataSource instanceof HikariDataSource hikariDataSource ? hikariDataSource.getMaximumPoolSize() : 0;
+            int limit = concurrencyLimit(maxConcurrency, poolSize, reservedConnections);
+            if (limit > 0) {
+                System.out.println("ℹ️  Limiting concurrent database access to " + limit + " of " + poolSize + " pooled connections");
+                return new ConcurrencyLimitedDataSource(dataSource, limit, acquireTimeoutMs);
+            }
+        }
+        return dataSource;
+    }
+
+    // A negative setting derives the limit from the pool; an explicit one is capped by it. Either way a few
+    // connections stay out of the permits' reach, so while Hikari replaces a retired or broken connection a
+    // permit holder does not end up waiting inside the pool, whose timeout is far shorter than the permit's
+    static int concurrencyLimit(int configured, int poolSize, int reserved) {
+        if (poolSize <= 0) {
+            return Math.max(configured, 0);
+        }
+        int ceiling = Math.max(1, poolSize - reserved);
+        return configured < 0 ? ceiling : Math.min(configured, ceiling);
     }
 } 
\ No newline at end of file
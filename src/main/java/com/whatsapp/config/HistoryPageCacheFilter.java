@@ -0,0 +1,154 @@
+package com.whatsapp.config;
+
+import com.whatsapp.service.impl.HistoryPageCache;
+import com.whatsapp.util.SnowflakeIdGenerator;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Answers {@code GET /messages/chatroom/{id}/history?before=...} from {@link HistoryPageCache}
+ * when it can, writing the stored bytes straight to the response; otherwise the request runs
+ * as usual and a successful response is stored on the way out. Only pages older than a
+ * cursor are cached, and only once the cursor is past the commit grace period, so a message
+ * still committing cannot appear in a page after it was cached. Runs after the security
+ * filters, so a hit is authorized like any other request.
+ */
+@Component
+public class HistoryPageCacheFilter extends OncePerRequestFilter {
+
+    private static final Pattern HISTORY_PATH = Pattern.compile("/messages/chatroom/(\\d+)/history");
+    private static final String DEFAULT_LIMIT = "50";
+
+    @Autowired
+    private HistoryPageCache historyPageCache;
+
+    @Value("${app.messages.page-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.messages.page-cache.gzip:true}")
+    private boolean gzipEnabled;
+
+    @Value("${app.sync.commit-grace-ms:5000}")
+    private long commitGraceMs;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled
+                || !"GET".equals(request.getMethod())
+                || request.getParameter("before") == null
+                || request.getParameter("after") != null
+                || request.getParameter("around") != null
+                || !HISTORY_PATH.matcher(pathWithinApplication(request)).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // The same URL is sent gzipped or not depending on whether the page came from the cache
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        HistoryPageCache.Key key = keyFor(request);
+        if (key == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // One version read serves the lookup and, on a miss, the page built below
+        long version = historyPageCache.version(key.chatroomId());
+        HistoryPageCache.Page page = historyPageCache.get(key, version);
+        if (page != null) {
+            if (page.etag() == null || !new ServletWebRequest(request, response).checkNotModified(page.etag())) {
+                write(response, page);
+            }
+            return;
+        }
+
+        long createdAt = System.currentTimeMillis();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(request, wrapper);
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        byte[] body = wrapper.getContentAsByteArray();
+        if (key.gzip()) {
+            body = gzip(body);
+        }
+        page = new HistoryPageCache.Page(version, createdAt, body, wrapper.getContentType(),
+                wrapper.getHeader(HttpHeaders.ETAG), key.gzip());
+        historyPageCache.put(key, page);
+        wrapper.resetBuffer();
+        write(response, page);
+    }
+
+    // Null when the request cannot be served from or stored in the cache
+    private HistoryPageCache.Key keyFor(HttpServletRequest request) {
+        Matcher path = HISTORY_PATH.matcher(pathWithinApplication(request));
+        if (!path.matches()) {
+            return null;
+        }
+        long chatroomId;
+        long before;
+        int limit;
+        try {
+            chatroomId = Long.parseLong(path.group(1));
+            before = Long.parseLong(request.getParameter("before"));
+            String limitParam = request.getParameter("limit");
+            limit = Integer.parseInt(limitParam != null ? limitParam : DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            return null; // left to the controller to reject
+        }
+        // A page this close to the head can still gain a message that is committing right now
+        if (before <= 0 || SnowflakeIdGenerator.timestampOf(before).isAfter(Instant.now().minusMillis(commitGraceMs))) {
+            return null;
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = gzipEnabled && acceptEncoding != null && acceptEncoding.contains("gzip");
+        return new HistoryPageCache.Key(chatroomId, before, limit, request.getHeader(HttpHeaders.ACCEPT), gzip);
+    }
+
+    private static void write(HttpServletResponse response, HistoryPageCache.Page page) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        if (page.contentType() != null) {
+            response.setContentType(page.contentType());
+        }
+        if (page.etag() != null) {
+            response.setHeader(HttpHeaders.ETAG, page.etag());
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (page.gzipped()) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(page.body().length);
+        response.getOutputStream().write(page.body());
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(body);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String pathWithinApplication(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -0,0 +1,28 @@
+package com.whatsapp.config;
+
+import com.whatsapp.util.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IdGeneratorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorConfig.class);
+
+    // Every running instance must use a distinct node ID; two instances left on a shared default
+    // would generate colliding message IDs, so there is none outside the dev profile
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator(@Value("${app.id.node-id:}") String configuredNodeId) {
+        if (configuredNodeId.isBlank()) {
+            throw new IllegalStateException("app.id.node-id (NODE_ID) is not set: every running instance needs "
+                    + "a distinct node ID between 0 and " + SnowflakeIdGenerator.MAX_NODE_ID);
+        }
+        long nodeId = Long.parseLong(configuredNodeId.trim());
+        SnowflakeIdGenerator.configureShared(nodeId);
+        logger.info("Snowflake ID generator configured with node ID {}", nodeId);
+        return SnowflakeIdGenerator.shared();
+    }
+}
@@ -0,0 +1,51 @@
+package com.whatsapp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.util.PayloadStats;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * The regular JSON converter, timing and sizing message payloads into {@link PayloadStats}
+ * so they can be compared with the binary format. Other bodies are written untouched.
+ */
+public class MeasuredJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private final PayloadStats payloadStats;
+
+    public MeasuredJsonHttpMessageConverter(ObjectMapper objectMapper, PayloadStats payloadStats) {
+        super(objectMapper);
+        this.payloadStats = payloadStats;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (!MessageBinaryHttpMessageConverter.isMessagePayload(object)) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+
+        // Serialize into memory first so the time covers encoding only, not the network
+        long start = System.nanoTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+        super.writeInternal(object, type, new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return buffer;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return outputMessage.getHeaders();
+            }
+        });
+        payloadStats.record("json", buffer.size(), System.nanoTime() - start);
+        buffer.writeTo(outputMessage.getBody());
+    }
+}
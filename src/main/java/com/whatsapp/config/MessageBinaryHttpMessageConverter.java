@@ -0,0 +1,252 @@
+package com.whatsapp.config;
+
+import com.whatsapp.dto.AttachmentDto;
+import com.whatsapp.dto.MessageChangeDto;
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.dto.SyncResponse;
+import com.whatsapp.dto.UserDto;
+import com.whatsapp.util.PayloadStats;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of message payloads (a single message, a message list, history
+ * and sync responses), chosen with {@code Accept: application/vnd.whatsapp.messages}.
+ * It is registered after the JSON converter, so JSON stays the default for a missing or
+ * wildcard Accept header.
+ *
+ * <p>Layout: a version byte, a kind byte, then the body. Integers are LEB128 varints,
+ * signed ones zigzag-encoded. IDs and timestamps are deltas from the previous message,
+ * timestamps are wall-clock epoch milliseconds like the zone-less JSON strings, and
+ * strings are length-prefixed UTF-8 (0 = null). Sender names, avatars and file types go
+ * through a per-payload string table (0 = null, 1 = new string follows, n = entry n - 2),
+ * so a conversation repeats each only once. Senders carry ID, username and avatar only.
+ */
+public class MessageBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = new MediaType("application", "vnd.whatsapp.messages");
+
+    private static final int VERSION = 1;
+    private static final int KIND_MESSAGE = 1;
+    private static final int KIND_MESSAGE_LIST = 2;
+    private static final int KIND_HISTORY = 3;
+    private static final int KIND_SYNC = 4;
+
+    private final PayloadStats payloadStats;
+
+    public MessageBinaryHttpMessageConverter(PayloadStats payloadStats) {
+        super(MEDIA_TYPE);
+        this.payloadStats = payloadStats;
+    }
+
+    // Bodies this converter can write; the JSON converter measures the same ones for comparison
+    public static boolean isMessagePayload(Object body) {
+        if (body instanceof MessageDto || body instanceof MessageHistoryDto || body instanceof SyncResponse) {
+            return true;
+        }
+        return body instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof MessageDto;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return MessageDto.class.isAssignableFrom(clazz)
+                || MessageHistoryDto.class.isAssignableFrom(clazz)
+                || SyncResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (supports(clazz)) {
+            return true;
+        }
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() instanceof Class<?> raw && List.class.isAssignableFrom(raw)
+                && MessageDto.class.equals(parameterized.getActualTypeArguments()[0]);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Binary message payloads are response-only", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Binary message payloads are response-only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        long start = System.nanoTime();
+        Encoder encoder = new Encoder();
+        encoder.buffer.write(VERSION);
+        if (body instanceof MessageDto message) {
+            encoder.buffer.write(KIND_MESSAGE);
+            encoder.writeMessages(List.of(message));
+        } else if (body instanceof MessageHistoryDto history) {
+            encoder.buffer.write(KIND_HISTORY);
+            encoder.writeMessages(history.getMessages());
+            encoder.writeNullableId(history.getBeforeCursor());
+            encoder.writeNullableId(history.getAfterCursor());
+        } else if (body instanceof SyncResponse sync) {
+            encoder.buffer.write(KIND_SYNC);
+            encoder.writeMessages(sync.getMessages());
+            encoder.writeChanges(sync.getChanges());
+            encoder.writeNullableId(sync.getWatermark());
+            encoder.buffer.write((sync.isHasMore() ? 1 : 0) | (sync.isResyncRequired() ? 2 : 0));
+        } else {
+            encoder.buffer.write(KIND_MESSAGE_LIST);
+            @SuppressWarnings("unchecked")
+            List<MessageDto> messages = (List<MessageDto>) body;
+            encoder.writeMessages(messages);
+        }
+        payloadStats.record("binary", encoder.buffer.size(), System.nanoTime() - start);
+
+        outputMessage.getHeaders().setContentLength(encoder.buffer.size());
+        encoder.buffer.writeTo(outputMessage.getBody());
+    }
+
+    private static class Encoder {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        private final Map<String, Integer> strings = new HashMap<>();
+        private long previousId;
+        private long previousChatroomId;
+        private long previousMillis;
+
+        private void writeMessages(List<MessageDto> messages) {
+            writeVarLong(messages != null ? messages.size() : 0);
+            if (messages == null) {
+                return;
+            }
+            for (MessageDto message : messages) {
+                List<AttachmentDto> attachments = message.getAttachments();
+                boolean hasAttachments = attachments != null && !attachments.isEmpty();
+                // Flag 1 is unused: it marked a sequence number field that is no longer written
+                buffer.write((message.getUpdatedAt() != null ? 2 : 0)
+                        | (hasAttachments ? 4 : 0));
+                buffer.write(message.getMessageType().ordinal());
+                writeSignedVarLong(message.getId() - previousId);
+                previousId = message.getId();
+                writeSignedVarLong(message.getChatroomId() - previousChatroomId);
+                previousChatroomId = message.getChatroomId();
+                writeString(message.getContent());
+
+                UserDto sender = message.getSender();
+                writeVarLong(sender.getId());
+                writeTableString(sender.getUsername());
+                writeTableString(sender.getAvatarUrl());
+
+                long createdMillis = millis(message.getCreatedAt());
+                writeSignedVarLong(createdMillis - previousMillis);
+                previousMillis = createdMillis;
+                if (message.getUpdatedAt() != null) {
+                    writeSignedVarLong(millis(message.getUpdatedAt()) - createdMillis);
+                }
+
+                if (hasAttachments) {
+                    writeVarLong(attachments.size());
+                    for (AttachmentDto attachment : attachments) {
+                        writeVarLong(attachment.getId());
+                        buffer.write(attachment.getAttachmentType().ordinal());
+                        writeString(attachment.getFileName());
+                        writeString(attachment.getFilePath());
+                        writeTableString(attachment.getFileType());
+                        writeVarLong(attachment.getFileSize() != null ? attachment.getFileSize() : 0);
+                    }
+                }
+            }
+        }
+
+        private void writeChanges(List<MessageChangeDto> changes) {
+            writeVarLong(changes != null ? changes.size() : 0);
+            if (changes == null) {
+                return;
+            }
+            for (MessageChangeDto change : changes) {
+                buffer.write(change.getChangeType().ordinal());
+                writeSignedVarLong(change.getId() - previousId);
+                previousId = change.getId();
+                writeSignedVarLong(change.getMessageId() - change.getId());
+                writeSignedVarLong(change.getChatroomId() - previousChatroomId);
+                previousChatroomId = change.getChatroomId();
+                writeString(change.getContent());
+                long changedMillis = millis(change.getChangedAt());
+                writeSignedVarLong(changedMillis - previousMillis);
+                previousMillis = changedMillis;
+            }
+        }
+
+        private void writeNullableId(Long id) {
+            writeVarLong(id != null ? id + 1 : 0);
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            buffer.write(bytes, 0, bytes.length);
+        }
+
+        private void writeTableString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(index + 2L);
+                return;
+            }
+            strings.put(value, strings.size());
+            writeVarLong(1);
+            writeString(value);
+        }
+
+        private void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.write((int) value);
+        }
+
+        private static long millis(LocalDateTime timestamp) {
+            return timestamp != null ? timestamp.toInstant(ZoneOffset.UTC).toEpochMilli() : 0;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.whatsapp.config;
+
+import com.whatsapp.util.PayloadStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private PayloadStats payloadStats;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (int i = 0; i < converters.size(); i++) {
+            if (converters.get(i).getClass() == MappingJackson2HttpMessageConverter.class) {
+                MappingJackson2HttpMessageConverter json = (MappingJackson2HttpMessageConverter) converters.get(i);
+                converters.set(i, new MeasuredJsonHttpMessageConverter(json.getObjectMapper(), payloadStats));
+                break;
+            }
+        }
+        // Last, so JSON keeps winning for a missing or wildcard Accept header
+        converters.add(new MessageBinaryHttpMessageConverter(payloadStats));
+    }
+}
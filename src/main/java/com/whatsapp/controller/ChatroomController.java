@@ -1,16 +1,23 @@
 package com.whatsapp.controller;
 
 import com.whatsapp.dto.ChatroomDto;
+import com.whatsapp.dto.InboxEntryDto;
 import com.whatsapp.service.ChatroomService;
+import com.whatsapp.util.ETags;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/chatrooms")
@@ -49,12 +56,48 @@ public class ChatroomController {
     }
 
     @GetMapping("/user/{userId}")
-    @Operation(summary = "Get user's chatrooms", description = "Retrieves a paginated list of chatrooms for a specific user")
+    @Operation(summary = "Get user's chatrooms", description = "Retrieves a paginated list of chatrooms for a specific user. Supports If-None-Match: an unchanged list returns 304 without being read")
     public ResponseEntity<Page<ChatroomDto>> getUserChatrooms(
             @Parameter(description = "User ID") @PathVariable Long userId,
-            Pageable pageable) {
+            Pageable pageable,
+            ServletWebRequest webRequest) {
+        Optional<String> version = chatroomService.getUserChatroomsTag(userId);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = ETags.forRepresentation(version.get(), webRequest);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
         Page<ChatroomDto> chatrooms = chatroomService.getUserChatrooms(userId, pageable);
-        return ResponseEntity.ok(chatrooms);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(chatrooms);
+    }
+
+    @GetMapping("/user/{userId}/inbox")
+    @Operation(summary = "Get user's inbox", description = "Retrieves the user's chatrooms with the other participant, last message preview and unread count, most recently active first")
+    public ResponseEntity<List<InboxEntryDto>> getInbox(
+            @Parameter(description = "User ID") @PathVariable Long userId,
+            Pageable pageable) {
+        List<InboxEntryDto> inbox = chatroomService.getInbox(userId, pageable);
+        return ResponseEntity.ok(inbox);
+    }
+
+    @GetMapping("/user/{userId}/unread")
+    @Operation(summary = "Get user's unread total", description = "Retrieves the number of unread messages across all of the user's chatrooms")
+    public ResponseEntity<Long> getUnreadTotal(
+            @Parameter(description = "User ID") @PathVariable Long userId) {
+        long unread = chatroomService.getUnreadTotal(userId);
+        return ResponseEntity.ok(unread);
+    }
+
+    @PostMapping("/{chatroomId}/read")
+    @Operation(summary = "Mark chatroom read", description = "Acknowledges that the user has read the chatroom up to and including the given message")
+    public ResponseEntity<Void> markRead(
+            @Parameter(description = "Chatroom ID") @PathVariable Long chatroomId,
+            @Parameter(description = "Reading user ID") @RequestParam Long userId,
+            @Parameter(description = "ID of the newest message read") @RequestParam Long messageId) {
+        chatroomService.markRead(chatroomId, userId, messageId);
+        return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/exists")
@@ -1,19 +1,35 @@
 package com.whatsapp.controller;
 
+import com.whatsapp.dto.AcceptedMessageDto;
+import com.whatsapp.dto.BatchMessageRequest;
+import com.whatsapp.dto.BatchMessageResult;
 import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.dto.MessageSearchResultDto;
+import com.whatsapp.dto.SyncRequest;
+import com.whatsapp.dto.SyncResponse;
 import com.whatsapp.service.MessageService;
+import com.whatsapp.util.ETags;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/messages")
@@ -24,15 +40,28 @@ public class MessageController {
     private MessageService messageService;
 
     @PostMapping("/text")
-    @Operation(summary = "Send text message", description = "Sends a text message to a chatroom")
-    public ResponseEntity<MessageDto> sendTextMessage(
+    @Operation(summary = "Send text message", description = "Sends a text message to a chatroom. With async=true the message is accepted with its final ID (202) and persisted in the background")
+    public ResponseEntity<?> sendTextMessage(
             @Parameter(description = "Chatroom ID") @RequestParam Long chatroomId,
             @Parameter(description = "Sender ID") @RequestParam Long senderId,
-            @Parameter(description = "Message content") @RequestParam String content) {
-        MessageDto message = messageService.sendTextMessage(chatroomId, senderId, content);
+            @Parameter(description = "Message content") @RequestParam String content,
+            @Parameter(description = "Optional client key; retries with the same key return the original message") @RequestParam(required = false) String clientKey,
+            @Parameter(description = "Accept and persist asynchronously") @RequestParam(defaultValue = "false") boolean async) {
+        if (async && messageService.isAsyncSendEnabled()) {
+            AcceptedMessageDto accepted = messageService.acceptTextMessage(chatroomId, senderId, content, clientKey);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(accepted);
+        }
+        MessageDto message = messageService.sendTextMessage(chatroomId, senderId, content, clientKey);
         return ResponseEntity.status(HttpStatus.CREATED).body(message);
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Send messages in bulk", description = "Sends many text messages across one or more chatrooms and returns a result per item")
+    public ResponseEntity<List<BatchMessageResult>> sendTextMessages(@Valid @RequestBody BatchMessageRequest request) {
+        List<BatchMessageResult> results = messageService.sendTextMessages(request.getMessages());
+        return ResponseEntity.ok(results);
+    }
+
     @PostMapping("/attachment")
     @Operation(summary = "Send message with attachment", description = "Sends a message with file attachments (images/videos)")
     public ResponseEntity<MessageDto> sendMessageWithAttachment(
@@ -54,12 +83,49 @@ public class MessageController {
     }
 
     @GetMapping("/chatroom/{chatroomId}")
-    @Operation(summary = "Get chatroom messages", description = "Retrieves paginated messages for a specific chatroom")
+    @Operation(summary = "Get chatroom messages", description = "Retrieves paginated messages for a specific chatroom. Supports If-None-Match: unchanged pages return 304 without being read")
     public ResponseEntity<Page<MessageDto>> getChatroomMessages(
             @Parameter(description = "Chatroom ID") @PathVariable Long chatroomId,
-            Pageable pageable) {
+            Pageable pageable,
+            ServletWebRequest webRequest) {
+        Optional<String> version = messageService.getChatroomMessagesTag(chatroomId);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = ETags.forRepresentation(version.get(), webRequest);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
         Page<MessageDto> messages = messageService.getChatroomMessages(chatroomId, pageable);
-        return ResponseEntity.ok(messages);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(messages);
+    }
+
+    @GetMapping("/chatroom/{chatroomId}/history")
+    @Operation(summary = "Get chatroom history", description = "Retrieves messages by cursor: the latest, before or after a message ID, or around one. No totals are computed, so deep history costs the same as recent history")
+    public ResponseEntity<MessageHistoryDto> getChatroomHistory(
+            @Parameter(description = "Chatroom ID") @PathVariable Long chatroomId,
+            @Parameter(description = "Return messages older than this message ID") @RequestParam(required = false) Long before,
+            @Parameter(description = "Return messages newer than this message ID; to tail the room, poll with the returned afterCursor, which may repeat recent messages") @RequestParam(required = false) Long after,
+            @Parameter(description = "Return messages around (and including) this message ID") @RequestParam(required = false) Long around,
+            @Parameter(description = "Number of messages to retrieve") @RequestParam(defaultValue = "50") int limit,
+            ServletWebRequest webRequest) {
+        Optional<String> version = messageService.getChatroomMessagesTag(chatroomId);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = ETags.forRepresentation(version.get(), webRequest);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        MessageHistoryDto history = messageService.getChatroomHistory(chatroomId, before, after, around, limit);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(history);
+    }
+
+    @PostMapping("/sync")
+    @Operation(summary = "Sync messages", description = "Returns new, edited and deleted messages across all of a user's chatrooms since a watermark (global or per chatroom)")
+    public ResponseEntity<SyncResponse> syncMessages(@Valid @RequestBody SyncRequest request) {
+        SyncResponse response = messageService.syncMessages(request);
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/chatroom/{chatroomId}/before/{messageId}")
@@ -81,6 +147,31 @@ public class MessageController {
         return ResponseEntity.noContent().build();
     }
 
+    @GetMapping("/chatroom/{chatroomId}/export")
+    @Operation(summary = "Export chatroom history", description = "Streams every message of a chatroom, oldest first, as newline-delimited JSON")
+    public ResponseEntity<StreamingResponseBody> exportChatroom(
+            @Parameter(description = "Chatroom ID") @PathVariable Long chatroomId) {
+        // Fails fast on an unknown chatroom, before the response is committed
+        messageService.getMessageCountByChatroom(chatroomId);
+        StreamingResponseBody body = out -> messageService.exportChatroom(chatroomId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"chatroom-" + chatroomId + ".ndjson\"")
+                .body(body);
+    }
+
+    @GetMapping("/payload-stats")
+    @Operation(summary = "Get payload statistics", description = "Average response size and serialization time of message payloads, per wire format (JSON or application/vnd.whatsapp.messages)")
+    public ResponseEntity<Map<String, Map<String, Object>>> getPayloadStats() {
+        return ResponseEntity.ok(messageService.getPayloadStats());
+    }
+
+    @GetMapping("/page-cache-stats")
+    @Operation(summary = "Get history page cache statistics", description = "Hit ratio, invalidations, evictions and size of the cache of serialized older history pages")
+    public ResponseEntity<Map<String, Object>> getHistoryPageCacheStats() {
+        return ResponseEntity.ok(messageService.getHistoryPageCacheStats());
+    }
+
     @GetMapping("/chatroom/{chatroomId}/count")
     @Operation(summary = "Get message count", description = "Retrieves the total number of messages in a chatroom")
     public ResponseEntity<Long> getMessageCount(
@@ -100,11 +191,24 @@ public class MessageController {
     }
 
     @GetMapping("/chatroom/{chatroomId}/search")
-    @Operation(summary = "Search messages", description = "Searches for messages containing specific text in a chatroom")
+    @Operation(summary = "Search messages", description = "Full-text search in a chatroom: messages containing every word of the term (as a word or word prefix), best match first")
     public ResponseEntity<List<MessageDto>> searchMessages(
             @Parameter(description = "Chatroom ID") @PathVariable Long chatroomId,
-            @Parameter(description = "Search term") @RequestParam String searchTerm) {
-        List<MessageDto> messages = messageService.searchMessages(chatroomId, searchTerm);
+            @Parameter(description = "Search term") @RequestParam String searchTerm,
+            @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Number of messages per page") @RequestParam(defaultValue = "20") int limit) {
+        List<MessageDto> messages = messageService.searchMessages(chatroomId, searchTerm, page, limit);
         return ResponseEntity.ok(messages);
     }
+
+    @GetMapping("/user/{userId}/search")
+    @Operation(summary = "Search all of a user's messages", description = "Full-text search across every chatroom of a user, best match first, newest first among equal matches. Pass nextCursor back as cursor for the next page")
+    public ResponseEntity<MessageSearchResultDto> searchUserMessages(
+            @Parameter(description = "User ID") @PathVariable Long userId,
+            @Parameter(description = "Search term") @RequestParam String searchTerm,
+            @Parameter(description = "Cursor from the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Number of messages per page") @RequestParam(defaultValue = "20") int limit) {
+        MessageSearchResultDto result = messageService.searchUserMessages(userId, searchTerm, cursor, limit);
+        return ResponseEntity.ok(result);
+    }
 } 
\ No newline at end of file
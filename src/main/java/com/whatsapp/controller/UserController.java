@@ -2,6 +2,7 @@ package com.whatsapp.controller;
 
 import com.whatsapp.dto.UserDto;
 import com.whatsapp.service.UserService;
+import com.whatsapp.util.ETags;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -9,11 +10,14 @@ import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/users")
@@ -31,11 +35,20 @@ public class UserController {
     }
 
     @GetMapping("/{userId}")
-    @Operation(summary = "Get user by ID", description = "Retrieves a user profile by their ID")
+    @Operation(summary = "Get user by ID", description = "Retrieves a user profile by their ID. Supports If-None-Match: an unchanged profile returns 304 without being read")
     public ResponseEntity<UserDto> getUserById(
-            @Parameter(description = "User ID") @PathVariable Long userId) {
+            @Parameter(description = "User ID") @PathVariable Long userId,
+            ServletWebRequest webRequest) {
+        Optional<String> version = userService.getUserTag(userId);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = ETags.forRepresentation(version.get(), webRequest);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
         return userService.getUserById(userId)
-                .map(ResponseEntity::ok)
+                .map(user -> ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(user))
                 .orElse(ResponseEntity.notFound().build());
     }
 
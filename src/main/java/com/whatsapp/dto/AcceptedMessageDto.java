@@ -0,0 +1,22 @@
+package com.whatsapp.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AcceptedMessageDto {
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id; // final message ID, assigned before the message is persisted
+    private Long chatroomId;
+    private Long senderId;
+    private String clientKey;
+    private String status; // ACCEPTED, or SENT when a client key matched an already stored message
+    private LocalDateTime acceptedAt;
+}
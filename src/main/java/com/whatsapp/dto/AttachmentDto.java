@@ -1,5 +1,7 @@
 package com.whatsapp.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.whatsapp.model.Attachment;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -8,6 +10,7 @@ import java.time.LocalDateTime;
 
 public class AttachmentDto {
 
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
     
     @NotBlank(message = "File name is required")
@@ -24,6 +27,7 @@ public class AttachmentDto {
     @NotNull(message = "Attachment type is required")
     private Attachment.AttachmentType attachmentType;
     
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long messageId;
     private LocalDateTime createdAt;
 
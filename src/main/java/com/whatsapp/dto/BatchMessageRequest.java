@@ -0,0 +1,31 @@
+package com.whatsapp.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchMessageRequest {
+    @NotEmpty(message = "At least one message is required")
+    private List<@Valid Item> messages;
+
+    @Data
+    public static class Item {
+        @NotNull(message = "Chatroom ID is required")
+        private Long chatroomId;
+
+        @NotNull(message = "Sender ID is required")
+        private Long senderId;
+
+        @NotBlank(message = "Message content is required")
+        private String content;
+
+        @Size(max = 64, message = "Client key cannot exceed 64 characters")
+        private String clientKey; // optional idempotency key
+    }
+}
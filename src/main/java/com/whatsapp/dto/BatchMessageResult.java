@@ -0,0 +1,15 @@
+package com.whatsapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchMessageResult {
+    private int index; // position of the item in the request
+    private boolean success;
+    private MessageDto message;
+    private String error;
+}
@@ -0,0 +1,28 @@
+package com.whatsapp.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxEntryDto {
+    private Long chatroomId;
+    private Long otherUserId;
+    private String otherUsername;
+    private String otherAvatarUrl;
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long lastMessageId;
+    private String lastMessagePreview; // first 100 characters
+    private Long lastMessageSenderId;
+    private LocalDateTime lastMessageAt;
+    private Long unreadCount;
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long lastReadMessageId;
+    private LocalDateTime updatedAt;
+}
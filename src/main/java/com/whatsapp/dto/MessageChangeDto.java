@@ -0,0 +1,24 @@
+package com.whatsapp.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.whatsapp.model.MessageChange;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageChangeDto {
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id; // position in the sync stream, comparable with message IDs
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long messageId;
+    private Long chatroomId;
+    private MessageChange.ChangeType changeType;
+    private String content; // new content for edits
+    private LocalDateTime changedAt;
+}
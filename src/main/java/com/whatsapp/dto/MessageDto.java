@@ -1,5 +1,7 @@
 package com.whatsapp.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.whatsapp.model.Message;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -9,6 +11,7 @@ import java.util.List;
 
 public class MessageDto {
 
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
     
     @NotBlank(message = "Message content is required")
@@ -1,6 +1,8 @@
 package com.whatsapp.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import lombok.Data;
 
 import java.time.LocalDateTime;
@@ -8,6 +10,7 @@ import java.time.LocalDateTime;
 @Data
 public class MessageEvent {
     private String eventType; // MESSAGE_SENT, MESSAGE_DELETED, MESSAGE_EDITED
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long messageId;
     private Long chatroomId;
     private String senderUsername;
@@ -0,0 +1,23 @@
+package com.whatsapp.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageHistoryDto {
+    private List<MessageDto> messages; // oldest first
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long beforeCursor; // pass as "before" to load older messages, null when there are none
+    @JsonSerialize(using = ToStringSerializer.class)
+    // Pass as "after" to load newer messages, null when there are none. On an "after" page that reached
+    // the newest message it is always set, held back by the commit grace period: the next poll may
+    // repeat recent messages, which the client drops by ID.
+    private Long afterCursor;
+}
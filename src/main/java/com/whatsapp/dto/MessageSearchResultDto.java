@@ -0,0 +1,15 @@
+package com.whatsapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchResultDto {
+    private List<MessageDto> messages; // best match first
+    private String nextCursor; // pass as "cursor" to load the next page, null when there is none
+}
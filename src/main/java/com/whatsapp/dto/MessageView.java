@@ -0,0 +1,24 @@
+package com.whatsapp.dto;
+
+import com.whatsapp.model.Message;
+
+import java.time.LocalDateTime;
+
+/**
+ * Flat, read-only message row selected directly by JPQL constructor expressions, so list
+ * reads never hydrate Message or User entities into the persistence context.
+ */
+public record MessageView(
+        Long id,
+        String content,
+        Message.MessageType messageType,
+        Long chatroomId,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        Long senderId,
+        String senderUsername,
+        String senderBio,
+        String senderAvatarUrl,
+        LocalDateTime senderCreatedAt,
+        LocalDateTime senderUpdatedAt) {
+}
@@ -1,5 +1,7 @@
 package com.whatsapp.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.whatsapp.model.Reaction;
 import jakarta.validation.constraints.NotNull;
 
@@ -7,12 +9,14 @@ import java.time.LocalDateTime;
 
 public class ReactionDto {
 
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
     
     @NotNull(message = "Reaction type is required")
     private Reaction.ReactionType reactionType;
     
     private UserDto user;
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long messageId;
     private LocalDateTime createdAt;
 
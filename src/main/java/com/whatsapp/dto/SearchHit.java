@@ -0,0 +1,13 @@
+package com.whatsapp.dto;
+
+import java.util.Comparator;
+
+/**
+ * A search match: the message and its engine-specific relevance score.
+ */
+public record SearchHit(long messageId, double score) {
+
+    // Best match first, newest first among equal scores; also the order search cursors page in
+    public static final Comparator<SearchHit> BEST_FIRST = Comparator.comparingDouble(SearchHit::score).reversed()
+            .thenComparing(Comparator.comparingLong(SearchHit::messageId).reversed());
+}
@@ -0,0 +1,22 @@
+package com.whatsapp.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class SyncRequest {
+    @NotNull(message = "User ID is required")
+    private Long userId;
+
+    private Long since; // watermark from the previous sync, applied to every room without its own entry
+
+    private Map<Long, Long> rooms; // optional per-chatroom watermarks
+
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 1000, message = "Limit cannot exceed 1000")
+    private int limit = 500;
+}
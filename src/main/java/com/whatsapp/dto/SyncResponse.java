@@ -0,0 +1,21 @@
+package com.whatsapp.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncResponse {
+    private List<MessageDto> messages; // new messages, oldest first
+    private List<MessageChangeDto> changes; // edits and deletions, oldest first
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long watermark; // pass as "since" on the next sync; items may repeat and are deduplicated by ID
+    private boolean hasMore; // true when the limit was hit; sync again right away
+    private boolean resyncRequired; // the watermark predates the change log, reload history instead
+}
@@ -10,10 +10,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "chatrooms")
+@Table(name = "chatrooms", indexes = {
+        @Index(name = "idx_chatrooms_user1", columnList = "user1_id"),
+        @Index(name = "idx_chatrooms_user2", columnList = "user2_id")
+})
 @EntityListeners(AuditingEntityListener.class)
 public class Chatroom {
 
+    public static final int PREVIEW_LENGTH = 100;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -26,6 +31,40 @@ public class Chatroom {
     @JoinColumn(name = "user2_id", nullable = false)
     private User user2;
 
+    // Inbox columns, written behind by ChatroomActivityTracker
+    @Column(name = "last_message_id", insertable = false, updatable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_message_preview", length = PREVIEW_LENGTH, insertable = false, updatable = false)
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_sender_id", insertable = false, updatable = false)
+    private Long lastMessageSenderId;
+
+    @Column(name = "last_message_at", insertable = false, updatable = false)
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "user1_unread_count", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long user1UnreadCount = 0L;
+
+    @Column(name = "user2_unread_count", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long user2UnreadCount = 0L;
+
+    // Maintained by write-behind deltas; MessageCountRepairJob recounts it if it drifts
+    @Column(name = "message_count", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long messageCount = 0L;
+
+    // Bumped in the writing transaction whenever existing messages are edited or deleted
+    @Column(name = "content_version", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long contentVersion = 0L;
+
+    // Read watermarks: the newest message ID each participant has acknowledged
+    @Column(name = "user1_read_upto", insertable = false, updatable = false)
+    private Long user1ReadUpto;
+
+    @Column(name = "user2_read_upto", insertable = false, updatable = false)
+    private Long user2ReadUpto;
+
     @CreatedDate
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -71,6 +110,86 @@ public class Chatroom {
         this.user2 = user2;
     }
 
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(Long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    public String getLastMessagePreview() {
+        return lastMessagePreview;
+    }
+
+    public void setLastMessagePreview(String lastMessagePreview) {
+        this.lastMessagePreview = lastMessagePreview;
+    }
+
+    public Long getLastMessageSenderId() {
+        return lastMessageSenderId;
+    }
+
+    public void setLastMessageSenderId(Long lastMessageSenderId) {
+        this.lastMessageSenderId = lastMessageSenderId;
+    }
+
+    public LocalDateTime getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public void setLastMessageAt(LocalDateTime lastMessageAt) {
+        this.lastMessageAt = lastMessageAt;
+    }
+
+    public Long getUser1UnreadCount() {
+        return user1UnreadCount;
+    }
+
+    public void setUser1UnreadCount(Long user1UnreadCount) {
+        this.user1UnreadCount = user1UnreadCount;
+    }
+
+    public Long getUser2UnreadCount() {
+        return user2UnreadCount;
+    }
+
+    public void setUser2UnreadCount(Long user2UnreadCount) {
+        this.user2UnreadCount = user2UnreadCount;
+    }
+
+    public Long getMessageCount() {
+        return messageCount;
+    }
+
+    public void setMessageCount(Long messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public Long getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(Long contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    public Long getUser1ReadUpto() {
+        return user1ReadUpto;
+    }
+
+    public void setUser1ReadUpto(Long user1ReadUpto) {
+        this.user1ReadUpto = user1ReadUpto;
+    }
+
+    public Long getUser2ReadUpto() {
+        return user2ReadUpto;
+    }
+
+    public void setUser2ReadUpto(Long user2ReadUpto) {
+        this.user2ReadUpto = user2ReadUpto;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -11,12 +11,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_messages_sender_client_key", columnNames = {"sender_id", "client_key"})
+}, indexes = {
+        @Index(name = "idx_messages_chatroom_id", columnList = "chatroom_id, id")
+})
 @EntityListeners(AuditingEntityListener.class)
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @NotBlank(message = "Message content is required")
@@ -35,6 +39,10 @@ public class Message {
     @JoinColumn(name = "chatroom_id", nullable = false)
     private Chatroom chatroom;
 
+    // Optional client-supplied idempotency key, unique per sender
+    @Column(name = "client_key", length = 64, updatable = false)
+    private String clientKey;
+
     @CreatedDate
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -43,6 +51,10 @@ public class Message {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Identifier handed out before the message is persisted (asynchronous sends)
+    @Transient
+    private Long reservedId;
+
     // Relationships
     @OneToMany(mappedBy = "message", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Reaction> reactions = new ArrayList<>();
@@ -111,6 +123,14 @@ public class Message {
         this.chatroom = chatroom;
     }
 
+    public String getClientKey() {
+        return clientKey;
+    }
+
+    public void setClientKey(String clientKey) {
+        this.clientKey = clientKey;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -127,6 +147,14 @@ public class Message {
         this.updatedAt = updatedAt;
     }
 
+    public Long getReservedId() {
+        return reservedId;
+    }
+
+    public void setReservedId(Long reservedId) {
+        this.reservedId = reservedId;
+    }
+
     public List<Reaction> getReactions() {
         return reactions;
     }
@@ -0,0 +1,116 @@
+package com.whatsapp.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * Append-only log of edits and deletions, read by delta sync. IDs come from the same
+ * time-ordered generator as message IDs, so one watermark covers both.
+ */
+@Entity
+@Table(name = "message_changes", indexes = {
+        @Index(name = "idx_message_changes_chatroom_id", columnList = "chatroom_id, id")
+})
+@EntityListeners(AuditingEntityListener.class)
+public class MessageChange {
+
+    @Id
+    @SnowflakeId
+    private Long id;
+
+    @Column(name = "message_id", nullable = false)
+    private Long messageId;
+
+    @Column(name = "chatroom_id", nullable = false)
+    private Long chatroomId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false)
+    private ChangeType changeType;
+
+    // New content for edits, null for deletions
+    @Column(columnDefinition = "TEXT")
+    private String content;
+
+    @CreatedDate
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public enum ChangeType {
+        EDITED, DELETED,
+        CREATED // persisted after readers walking by message ID had passed its ID (async ingest retries)
+    }
+
+    // Constructors
+    public MessageChange() {}
+
+    public MessageChange(Long messageId, Long chatroomId, ChangeType changeType, String content) {
+        this.messageId = messageId;
+        this.chatroomId = chatroomId;
+        this.changeType = changeType;
+        this.content = content;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public Long getChatroomId() {
+        return chatroomId;
+    }
+
+    public void setChatroomId(Long chatroomId) {
+        this.chatroomId = chatroomId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public void setChangeType(ChangeType changeType) {
+        this.changeType = changeType;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "id=" + id +
+                ", messageId=" + messageId +
+                ", chatroomId=" + chatroomId +
+                ", changeType=" + changeType +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -0,0 +1,94 @@
+package com.whatsapp.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_events")
+@EntityListeners(AuditingEntityListener.class)
+public class OutboxEvent {
+
+    @Id
+    @SnowflakeId
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_kind", nullable = false)
+    private EventKind eventKind;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @CreatedDate
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Set while a relay is sending the event; another relay may take it over once this has passed
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+
+    public enum EventKind {
+        MESSAGE, NOTIFICATION
+    }
+
+    // Constructors
+    public OutboxEvent() {}
+
+    public OutboxEvent(EventKind eventKind, String payload) {
+        this.eventKind = eventKind;
+        this.payload = payload;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public EventKind getEventKind() {
+        return eventKind;
+    }
+
+    public void setEventKind(EventKind eventKind) {
+        this.eventKind = eventKind;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public void setClaimedUntil(LocalDateTime claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxEvent{" +
+                "id=" + id +
+                ", eventKind=" + eventKind +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
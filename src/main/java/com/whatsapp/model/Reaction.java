@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
 public class Reaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @NotNull(message = "Reaction type is required")
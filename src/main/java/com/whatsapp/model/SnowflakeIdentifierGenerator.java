@@ -0,0 +1,17 @@
+package com.whatsapp.model;
+
+import com.whatsapp.util.SnowflakeIdGenerator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+public class SnowflakeIdentifierGenerator implements IdentifierGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        // Keep an ID that was already handed out to the client
+        if (object instanceof Message message && message.getReservedId() != null) {
+            return message.getReservedId();
+        }
+        return SnowflakeIdGenerator.shared().nextId();
+    }
+}
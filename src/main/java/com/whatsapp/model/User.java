@@ -56,6 +56,10 @@ public class User {
     @Column(name = "avatar_url")
     private String avatarUrl;
 
+    // Bumped in the writing transaction whenever the profile embedded in chatrooms and messages changes
+    @Column(name = "profile_version", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long profileVersion = 0L;
+
     @CreatedDate
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -175,6 +179,14 @@ public class User {
         this.avatarUrl = avatarUrl;
     }
 
+    public Long getProfileVersion() {
+        return profileVersion;
+    }
+
+    public void setProfileVersion(Long profileVersion) {
+        this.profileVersion = profileVersion;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
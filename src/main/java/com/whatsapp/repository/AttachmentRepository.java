@@ -1,13 +1,19 @@
 package com.whatsapp.repository;
 
+import com.whatsapp.dto.AttachmentDto;
 import com.whatsapp.model.Attachment;
 import com.whatsapp.model.Message;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
@@ -18,6 +24,20 @@ public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
     List<Attachment> findByMessageAndAttachmentType(@Param("message") Message message, 
                                                   @Param("attachmentType") Attachment.AttachmentType attachmentType);
     
+    @Query("SELECT a FROM Attachment a WHERE a.message.id IN :messageIds ORDER BY a.id")
+    List<Attachment> findByMessageIdIn(@Param("messageIds") Collection<Long> messageIds);
+    
+    @Query("SELECT new com.whatsapp.dto.AttachmentDto(a.id, a.fileName, a.filePath, a.fileType, a.fileSize, " +
+           "a.attachmentType, a.message.id, a.createdAt) FROM Attachment a WHERE a.message.id IN :messageIds ORDER BY a.id")
+    List<AttachmentDto> findDtosByMessageIdIn(@Param("messageIds") Collection<Long> messageIds);
+    
+    // Ordered by message like MessageRepository.streamByChatroom, so the export can merge the two cursors
+    @Query("SELECT new com.whatsapp.dto.AttachmentDto(a.id, a.fileName, a.filePath, a.fileType, a.fileSize, " +
+           "a.attachmentType, a.message.id, a.createdAt) FROM Attachment a WHERE a.message.chatroom.id = :chatroomId " +
+           "ORDER BY a.message.id, a.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = MessageRepository.EXPORT_FETCH_SIZE))
+    Stream<AttachmentDto> streamByChatroom(@Param("chatroomId") Long chatroomId);
+    
     @Query("SELECT a FROM Attachment a WHERE a.filePath = :filePath")
     List<Attachment> findByFilePath(@Param("filePath") String filePath);
     
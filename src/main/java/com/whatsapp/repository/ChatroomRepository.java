@@ -1,20 +1,29 @@
 package com.whatsapp.repository;
 
+import com.whatsapp.dto.InboxEntryDto;
 import com.whatsapp.model.Chatroom;
 import com.whatsapp.model.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ChatroomRepository extends JpaRepository<Chatroom, Long> {
 
+    String INBOX_SELECT = "SELECT new com.whatsapp.dto.InboxEntryDto(c.id, o.id, o.username, o.avatarUrl, " +
+                          "c.lastMessageId, c.lastMessagePreview, c.lastMessageSenderId, c.lastMessageAt, " +
+                          "CASE WHEN c.user1.id = :userId THEN c.user1UnreadCount ELSE c.user2UnreadCount END, " +
+                          "CASE WHEN c.user1.id = :userId THEN c.user1ReadUpto ELSE c.user2ReadUpto END, c.updatedAt) " +
+                          "FROM Chatroom c JOIN User o ON o.id = CASE WHEN c.user1.id = :userId THEN c.user2.id ELSE c.user1.id END ";
+
     @Query("SELECT c FROM Chatroom c WHERE " +
            "(c.user1 = :user1 AND c.user2 = :user2) OR " +
            "(c.user1 = :user2 AND c.user2 = :user1)")
@@ -29,6 +38,48 @@ public interface ChatroomRepository extends JpaRepository<Chatroom, Long> {
            "c.user1 = :user OR c.user2 = :user")
     List<Chatroom> findAllByUser(@Param("user") User user);
 
+    @Query("SELECT c.user1.id, c.user2.id FROM Chatroom c WHERE c.id = :chatroomId")
+    List<Object[]> findParticipantIds(@Param("chatroomId") Long chatroomId);
+
+    @Query("SELECT c.lastMessageId FROM Chatroom c WHERE c.id = :chatroomId")
+    Optional<Long> findLastMessageId(@Param("chatroomId") Long chatroomId);
+
+    @Query("SELECT c.messageCount FROM Chatroom c WHERE c.id = :chatroomId")
+    Optional<Long> findMessageCount(@Param("chatroomId") Long chatroomId);
+
+    // Keyset walk over all chatrooms; pass PageRequest.of(0, n) as the limit
+    @Query("SELECT c.id FROM Chatroom c WHERE c.id > :afterId ORDER BY c.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT c.id FROM Chatroom c WHERE c.user1.id = :userId OR c.user2.id = :userId")
+    List<Long> findIdsByUser(@Param("userId") Long userId);
+
+    // Inbox rows straight from the denormalized columns: one query, no per-room lookups
+    @Query(INBOX_SELECT + "WHERE c.user1.id = :userId OR c.user2.id = :userId ORDER BY c.updatedAt DESC, c.id DESC")
+    List<InboxEntryDto> findInbox(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(INBOX_SELECT + "WHERE c.id IN :chatroomIds AND (c.user1.id = :userId OR c.user2.id = :userId)")
+    List<InboxEntryDto> findInboxEntries(@Param("userId") Long userId, @Param("chatroomIds") Collection<Long> chatroomIds);
+
+    // Re-points the preview at the newest remaining message after the last message was deleted
+    @Modifying
+    @Query(value = "UPDATE chatrooms SET (last_message_id, last_message_preview, last_message_sender_id, last_message_at) = " +
+                   "(SELECT m.id, LEFT(m.content, " + Chatroom.PREVIEW_LENGTH + "), m.sender_id, m.created_at " +
+                   "FROM messages m WHERE m.chatroom_id = :chatroomId ORDER BY m.id DESC LIMIT 1) " +
+                   "WHERE id = :chatroomId AND last_message_id = :messageId", nativeQuery = true)
+    int refreshLastMessage(@Param("chatroomId") Long chatroomId, @Param("messageId") Long messageId);
+
+    @Modifying
+    @Query(value = "UPDATE chatrooms SET last_message_preview = LEFT(:content, " + Chatroom.PREVIEW_LENGTH + ") " +
+                   "WHERE id = :chatroomId AND last_message_id = :messageId", nativeQuery = true)
+    int updateLastMessagePreview(@Param("chatroomId") Long chatroomId, @Param("messageId") Long messageId,
+                                 @Param("content") String content);
+
+    // Badge total across all of a user's chatrooms, read from the flushed counters
+    @Query("SELECT COALESCE(SUM(CASE WHEN c.user1.id = :userId THEN c.user1UnreadCount ELSE c.user2UnreadCount END), 0) " +
+           "FROM Chatroom c WHERE c.user1.id = :userId OR c.user2.id = :userId")
+    long sumUnreadCount(@Param("userId") Long userId);
+
     @Query("SELECT COUNT(c) FROM Chatroom c WHERE " +
            "(c.user1 = :user1 AND c.user2 = :user2) OR " +
            "(c.user1 = :user2 AND c.user2 = :user1)")
@@ -0,0 +1,22 @@
+package com.whatsapp.repository;
+
+import com.whatsapp.model.MessageChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MessageChangeRepository extends JpaRepository<MessageChange, Long> {
+
+    @Query("SELECT c FROM MessageChange c WHERE c.id > :after AND c.id <= :upto ORDER BY c.id")
+    List<MessageChange> findBetween(@Param("after") Long after, @Param("upto") Long upto, Pageable limit);
+
+    @Modifying
+    @Query("DELETE FROM MessageChange c WHERE c.id < :id")
+    int deleteOlderThan(@Param("id") Long id);
+}
@@ -1,35 +1,107 @@
 package com.whatsapp.repository;
 
+import com.whatsapp.dto.MessageView;
 import com.whatsapp.model.Chatroom;
 import com.whatsapp.model.Message;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    // List reads select straight into MessageView rows: no entities, proxies or dirty-checking snapshots
+    String SELECT_VIEW = "SELECT new com.whatsapp.dto.MessageView(m.id, m.content, m.messageType, m.chatroom.id, " +
+                         "m.createdAt, m.updatedAt, s.id, s.username, s.bio, s.avatarUrl, s.createdAt, s.updatedAt) " +
+                         "FROM Message m JOIN m.sender s ";
+    String VIEW_FETCH_SIZE = "200";
+    String EXPORT_FETCH_SIZE = "500";
+
     Page<Message> findByChatroomOrderByCreatedAtDesc(Chatroom chatroom, Pageable pageable);
     
+    // Read paths fetch the sender with the page (entity graph) instead of one query per row
+    @EntityGraph(attributePaths = "sender")
+    @Query("SELECT m FROM Message m WHERE m.id = :id")
+    Optional<Message> findWithSenderById(@Param("id") Long id);
+    
+    @EntityGraph(attributePaths = "sender")
     @Query("SELECT m FROM Message m WHERE m.chatroom = :chatroom ORDER BY m.createdAt DESC")
-    Page<Message> findMessagesByChatroom(@Param("chatroom") Chatroom chatroom, Pageable pageable);
+    List<Message> findMessagesByChatroom(@Param("chatroom") Chatroom chatroom, Pageable pageable);
     
     @Query("SELECT COUNT(m) FROM Message m WHERE m.chatroom = :chatroom")
     long countByChatroom(@Param("chatroom") Chatroom chatroom);
     
-    @Query("SELECT m FROM Message m WHERE m.chatroom = :chatroom AND m.id < :messageId ORDER BY m.createdAt DESC")
-    Page<Message> findMessagesBeforeId(@Param("chatroom") Chatroom chatroom, 
-                                      @Param("messageId") Long messageId, 
-                                      Pageable pageable);
+    // Messages from the other participant after a read watermark, a range scan on (chatroom_id, id)
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.chatroom.id = :chatroomId AND m.id > :afterId AND m.sender.id <> :userId")
+    long countUnreadAfter(@Param("chatroomId") Long chatroomId, @Param("afterId") Long afterId, @Param("userId") Long userId);
+    
+    // Keyset history queries, served by the (chatroom_id, id) index; pass PageRequest.of(0, n) as the limit
+    @Query(SELECT_VIEW + "WHERE m.chatroom.id = :chatroomId ORDER BY m.id DESC")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = VIEW_FETCH_SIZE))
+    List<MessageView> findLatest(@Param("chatroomId") Long chatroomId, Pageable limit);
+    
+    @Query(SELECT_VIEW + "WHERE m.chatroom.id = :chatroomId AND m.id < :before ORDER BY m.id DESC")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = VIEW_FETCH_SIZE))
+    List<MessageView> findBefore(@Param("chatroomId") Long chatroomId, @Param("before") Long before, Pageable limit);
+    
+    @Query(SELECT_VIEW + "WHERE m.chatroom.id = :chatroomId AND m.id > :after ORDER BY m.id ASC")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = VIEW_FETCH_SIZE))
+    List<MessageView> findAfter(@Param("chatroomId") Long chatroomId, @Param("after") Long after, Pageable limit);
+    
+    // Full-text search on the GIN-indexed content_tsv column (schema.sql), best match first; query is to_tsquery syntax
+    @Query(value = "SELECT m.id FROM messages m, to_tsquery('simple', :query) q " +
+                   "WHERE m.chatroom_id = :chatroomId AND m.content_tsv @@ q " +
+                   "ORDER BY ts_rank(m.content_tsv, q) DESC, m.id DESC", nativeQuery = true)
+    List<Long> searchIdsInChatroom(@Param("chatroomId") Long chatroomId, @Param("query") String query, Pageable page);
+    
+    // Search across all of a user's chatrooms in one statement, as (id, rank) rows; the cursor variant
+    // continues strictly after the last row of the previous page
+    String USER_SEARCH_SELECT = "SELECT m.id, ts_rank(m.content_tsv, q) AS rank FROM messages m, to_tsquery('simple', :query) q " +
+                                "WHERE m.chatroom_id IN (SELECT c.id FROM chatrooms c WHERE c.user1_id = :userId OR c.user2_id = :userId) " +
+                                "AND m.content_tsv @@ q";
+
+    @Query(value = USER_SEARCH_SELECT + " ORDER BY rank DESC, m.id DESC", nativeQuery = true)
+    List<Object[]> searchForUser(@Param("userId") Long userId, @Param("query") String query, Pageable limit);
+
+    @Query(value = "SELECT r.id, r.rank FROM (" + USER_SEARCH_SELECT + ") r " +
+                   "WHERE r.rank < CAST(:rank AS real) OR (r.rank = CAST(:rank AS real) AND r.id < :afterId) " +
+                   "ORDER BY r.rank DESC, r.id DESC", nativeQuery = true)
+    List<Object[]> searchForUserAfter(@Param("userId") Long userId, @Param("query") String query,
+                                      @Param("rank") double rank, @Param("afterId") Long afterId, Pageable limit);
+    
+    @Query(SELECT_VIEW + "WHERE m.id IN :ids")
+    List<MessageView> findViewsByIds(@Param("ids") Collection<Long> ids);
+    
+    // Message content in ID order, tailed by the embedded search index
+    @Query("SELECT m.id, m.chatroom.id, m.content FROM Message m WHERE m.id > :after AND m.id <= :upto ORDER BY m.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = VIEW_FETCH_SIZE))
+    List<Object[]> findContentBetween(@Param("after") Long after, @Param("upto") Long upto, Pageable limit);
+    
+    @Query("SELECT m FROM Message m WHERE m.sender.id = :senderId AND m.clientKey = :clientKey")
+    Optional<Message> findBySenderIdAndClientKey(@Param("senderId") Long senderId, 
+                                                 @Param("clientKey") String clientKey);
+
+    @Query("SELECT m.id FROM Message m WHERE m.sender.id = :senderId AND m.clientKey = :clientKey")
+    Optional<Long> findIdBySenderIdAndClientKey(@Param("senderId") Long senderId,
+                                                @Param("clientKey") String clientKey);
     
-    List<Message> findByChatroomOrderByCreatedAtAsc(Chatroom chatroom);
+    @Query("SELECT m.id FROM Message m WHERE m.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
     
-    @Query("SELECT m FROM Message m WHERE m.chatroom = :chatroom AND m.content LIKE %:searchTerm% ORDER BY m.createdAt DESC")
-    List<Message> findByChatroomAndContentContainingIgnoreCase(@Param("chatroom") Chatroom chatroom, 
-                                                             @Param("searchTerm") String searchTerm);
+    // Whole-room export through a server-side cursor; must be consumed and closed inside a transaction
+    @Query(SELECT_VIEW + "WHERE m.chatroom.id = :chatroomId ORDER BY m.id ASC")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    Stream<MessageView> streamByChatroom(@Param("chatroomId") Long chatroomId);
 } 
\ No newline at end of file
@@ -1,9 +1,11 @@
 package com.whatsapp.service;
 
 import com.whatsapp.dto.ChatroomDto;
+import com.whatsapp.dto.InboxEntryDto;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ChatroomService {
@@ -14,8 +16,17 @@ public interface ChatroomService {
     
     Optional<ChatroomDto> getChatroomByUsers(Long user1Id, Long user2Id);
     
+    // Weak ETag covering the user's chatroom list; read it before the list itself. Empty for an unknown user
+    Optional<String> getUserChatroomsTag(Long userId);
+    
     Page<ChatroomDto> getUserChatrooms(Long userId, Pageable pageable);
     
+    List<InboxEntryDto> getInbox(Long userId, Pageable pageable);
+    
+    void markRead(Long chatroomId, Long userId, Long messageId);
+    
+    long getUnreadTotal(Long userId);
+    
     boolean existsByUsers(Long user1Id, Long user2Id);
     
     void deleteChatroom(Long chatroomId);
@@ -4,8 +4,14 @@ import com.whatsapp.dto.MessageEvent;
 import com.whatsapp.dto.NotificationEvent;
 import com.whatsapp.dto.UserEvent;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface KafkaService {
     void publishMessageEvent(MessageEvent event);
     void publishUserEvent(UserEvent event);
     void publishNotificationEvent(NotificationEvent event);
+
+    // Unlike publish*, these report failures: the future completes once the broker has acknowledged the event
+    CompletableFuture<?> sendMessageEvent(MessageEvent event);
+    CompletableFuture<?> sendNotificationEvent(NotificationEvent event);
 } 
\ No newline at end of file
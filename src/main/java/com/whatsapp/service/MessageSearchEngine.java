@@ -0,0 +1,18 @@
+package com.whatsapp.service;
+
+import com.whatsapp.dto.SearchHit;
+
+import java.util.List;
+
+/**
+ * Finds message IDs for chatroom search; the messages themselves are loaded from the
+ * database. Selected with app.search.engine: postgres (the default) or embedded.
+ */
+public interface MessageSearchEngine {
+
+    // IDs of messages in the chatroom containing every word as a word prefix, best match first
+    List<Long> search(Long chatroomId, List<String> words, int page, int limit);
+
+    // The same across all of the user's chatrooms, in SearchHit.BEST_FIRST order, starting after the given hit
+    List<SearchHit> searchForUser(Long userId, List<String> words, SearchHit after, int limit);
+}
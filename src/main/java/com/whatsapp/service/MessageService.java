@@ -1,31 +1,67 @@
 package com.whatsapp.service;
 
+import com.whatsapp.dto.AcceptedMessageDto;
+import com.whatsapp.dto.BatchMessageRequest;
+import com.whatsapp.dto.BatchMessageResult;
 import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.dto.MessageSearchResultDto;
+import com.whatsapp.dto.SyncRequest;
+import com.whatsapp.dto.SyncResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface MessageService {
 
-    MessageDto sendTextMessage(Long chatroomId, Long senderId, String content);
+    MessageDto sendTextMessage(Long chatroomId, Long senderId, String content, String clientKey);
+    
+    AcceptedMessageDto acceptTextMessage(Long chatroomId, Long senderId, String content, String clientKey);
+    
+    boolean isAsyncSendEnabled();
+    
+    List<BatchMessageResult> sendTextMessages(List<BatchMessageRequest.Item> items);
     
     MessageDto sendMessageWithAttachment(Long chatroomId, Long senderId, String content, 
                                        List<MultipartFile> files);
     
     Optional<MessageDto> getMessageById(Long messageId);
     
+    // Weak ETag covering the chatroom's message pages; read it before the page itself. Empty for an unknown chatroom
+    Optional<String> getChatroomMessagesTag(Long chatroomId);
+    
     Page<MessageDto> getChatroomMessages(Long chatroomId, Pageable pageable);
     
     List<MessageDto> getChatroomMessagesBeforeId(Long chatroomId, Long messageId, int limit);
     
+    MessageHistoryDto getChatroomHistory(Long chatroomId, Long before, Long after, Long around, int limit);
+    
+    SyncResponse syncMessages(SyncRequest request);
+    
     void deleteMessage(Long messageId, Long userId);
     
     MessageDto editMessage(Long messageId, Long userId, String newContent);
     
     long getMessageCountByChatroom(Long chatroomId);
     
-    List<MessageDto> searchMessages(Long chatroomId, String searchTerm);
+    // Response size and serialization time of message payloads per wire format
+    Map<String, Map<String, Object>> getPayloadStats();
+    
+    // Hits, misses and size of the serialized history page cache
+    Map<String, Object> getHistoryPageCacheStats();
+    
+    // Writes every message of the chatroom, oldest first, as newline-delimited JSON
+    void exportChatroom(Long chatroomId, OutputStream out) throws IOException;
+    
+    // Ranked full-text search, best match first; every word of the term must match as a word prefix
+    List<MessageDto> searchMessages(Long chatroomId, String searchTerm, int page, int limit);
+    
+    // The same across all of the user's chatrooms, paged by an opaque cursor
+    MessageSearchResultDto searchUserMessages(Long userId, String searchTerm, String cursor, int limit);
 } 
\ No newline at end of file
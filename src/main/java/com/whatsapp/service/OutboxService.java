@@ -0,0 +1,13 @@
+package com.whatsapp.service;
+
+import com.whatsapp.dto.MessageEvent;
+import com.whatsapp.dto.NotificationEvent;
+
+public interface OutboxService {
+
+    void enqueueMessageEvent(MessageEvent event);
+
+    void enqueueNotificationEvent(NotificationEvent event);
+
+    int relayBatch();
+}
@@ -13,6 +13,9 @@ public interface UserService {
     
     UserDto updateUser(Long userId, UserDto userDto);
     
+    // Weak ETag covering the user's profile; read it before the profile itself. Empty for an unknown user
+    Optional<String> getUserTag(Long userId);
+    
     Optional<UserDto> getUserById(Long userId);
     
     Optional<UserDto> getUserByUsername(String username);
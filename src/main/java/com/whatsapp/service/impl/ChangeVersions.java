@@ -0,0 +1,134 @@
+package com.whatsapp.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Version tags for conditional GETs of a chatroom's message pages, a user's chatroom list
+ * and a user profile. Tags are built from database columns every instance writes, so a
+ * change made through one instance changes the tag on all of them; this instance's own
+ * writes not yet flushed by the activity tracker and counters are folded in as well.
+ * Sends flushed by other instances show up within their flush interval; edits and deletes
+ * move the room's content version and profile changes the user's profile version, in their
+ * own transaction. A room's pages embed both participants' profiles, so its tags and content
+ * version include their profile versions. An empty result means the resource does not exist.
+ *
+ * <p>Tags are read per request rather than memoized: the list tag must move on another
+ * instance's writes, and there is no channel every instance hears to invalidate a local
+ * copy. Each read is a handful of primary-key and user index lookups.
+ */
+@Component
+public class ChangeVersions {
+
+    // Versions only grow, so their sum moves whenever any of them does
+    private static final String CHATROOM_SQL =
+            "SELECT c.last_message_id, c.message_count, c.content_version + u1.profile_version + u2.profile_version " +
+            "FROM chatrooms c JOIN users u1 ON u1.id = c.user1_id JOIN users u2 ON u2.id = c.user2_id WHERE c.id = ?";
+
+    private static final String CHATROOM_VERSION_SQL =
+            "SELECT c.content_version + u1.profile_version + u2.profile_version " +
+            "FROM chatrooms c JOIN users u1 ON u1.id = c.user1_id JOIN users u2 ON u2.id = c.user2_id WHERE c.id = ?";
+
+    // Only the other participant's row is joined per room; the user's own comes once with "me"
+    private static final String CHATROOM_LIST_SQL =
+            "SELECT COUNT(c.id), MAX(c.id), SUM(c.content_version), MAX(c.updated_at), SUM(o.profile_version), MAX(me.profile_version) " +
+            "FROM users me " +
+            "LEFT JOIN chatrooms c ON c.user1_id = me.id OR c.user2_id = me.id " +
+            "LEFT JOIN users o ON o.id = CASE WHEN c.user1_id = me.id THEN c.user2_id ELSE c.user1_id END " +
+            "WHERE me.id = ? GROUP BY me.id";
+
+    private static final String PROFILE_SQL = "SELECT updated_at FROM users WHERE id = ?";
+
+    private static final String CONTENT_CHANGED_SQL =
+            "UPDATE chatrooms SET content_version = content_version + 1 WHERE id = ?";
+
+    private static final String PROFILE_CHANGED_SQL =
+            "UPDATE users SET profile_version = profile_version + 1 WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChatroomActivityTracker chatroomActivityTracker;
+
+    @Autowired
+    private ChatroomCounters chatroomCounters;
+
+    public Optional<String> chatroomTag(long chatroomId) {
+        List<String> rows = jdbcTemplate.query(CHATROOM_SQL, (rs, rowNum) -> tag("c",
+                Math.max(nullableLong(rs, 1), chatroomActivityTracker.getPendingLastMessageId(chatroomId).orElse(0L)),
+                rs.getLong(2) + chatroomCounters.pendingMessages(chatroomId),
+                rs.getLong(3)), chatroomId);
+        return rows.stream().findFirst();
+    }
+
+    // Read before querying, like a tag; -1 when the chatroom does not exist
+    public long chatroomContentVersion(long chatroomId) {
+        List<Long> rows = jdbcTemplate.queryForList(CHATROOM_VERSION_SQL, Long.class, chatroomId);
+        return rows.isEmpty() ? -1 : rows.get(0);
+    }
+
+    public Optional<String> chatroomListTag(long userId) {
+        Map<Long, LocalDateTime> pending = chatroomActivityTracker.getPendingActivityForUser(userId);
+        long pendingActivity = pending.values().stream().mapToLong(ChangeVersions::micros).max().orElse(0);
+        List<String> rows = jdbcTemplate.query(CHATROOM_LIST_SQL, (rs, rowNum) -> tag("l",
+                rs.getLong(1),
+                nullableLong(rs, 2),
+                nullableLong(rs, 3),
+                Math.max(micros(rs.getTimestamp(4)), pendingActivity),
+                nullableLong(rs, 5),
+                rs.getLong(6)), userId);
+        return rows.stream().findFirst();
+    }
+
+    public Optional<String> profileTag(long userId) {
+        List<String> rows = jdbcTemplate.query(PROFILE_SQL, (rs, rowNum) -> tag("p", micros(rs.getTimestamp(1))), userId);
+        return rows.stream().findFirst();
+    }
+
+    // Existing messages of the room were edited or deleted: every page of it may change
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void chatroomContentChanged(long chatroomId) {
+        jdbcTemplate.update(CONTENT_CHANGED_SQL, chatroomId);
+    }
+
+    // The profile is embedded in the user's chatrooms and every message they sent; one row is
+    // written however many rooms there are, and the room tags read it through the participants
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void profileChanged(long userId) {
+        jdbcTemplate.update(PROFILE_CHANGED_SQL, userId);
+    }
+
+    private static String tag(String kind, long... parts) {
+        StringBuilder tag = new StringBuilder("W/\"").append(kind);
+        for (long part : parts) {
+            tag.append('-').append(Long.toString(part, 36));
+        }
+        return tag.append('"').toString();
+    }
+
+    private static long nullableLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? 0 : value;
+    }
+
+    private static long micros(Timestamp timestamp) {
+        return timestamp != null ? micros(timestamp.toLocalDateTime()) : 0;
+    }
+
+    private static long micros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+}
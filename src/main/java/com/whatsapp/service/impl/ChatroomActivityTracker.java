@@ -0,0 +1,244 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.InboxEntryDto;
+import com.whatsapp.model.Chatroom;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind tracker for the denormalized chatroom columns: last-activity timestamp and
+ * last-message preview. Sends record activity here instead of updating the chatroom row;
+ * only the newest message per room is kept, and dirty rooms are written in one batched
+ * UPDATE per flush interval. Message and unread counts are handed on to {@link ChatroomCounters}.
+ */
+@Component
+public class ChatroomActivityTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatroomActivityTracker.class);
+
+    // Every SET expression sees the old row, so the last-message columns move together
+    private static final String FLUSH_SQL =
+            "UPDATE chatrooms SET " +
+            "updated_at = CASE WHEN updated_at IS NULL OR updated_at < ? THEN ? ELSE updated_at END, " +
+            "last_message_preview = CASE WHEN ? > COALESCE(last_message_id, 0) THEN ? ELSE last_message_preview END, " +
+            "last_message_sender_id = CASE WHEN ? > COALESCE(last_message_id, 0) THEN ? ELSE last_message_sender_id END, " +
+            "last_message_at = CASE WHEN ? > COALESCE(last_message_id, 0) THEN ? ELSE last_message_at END, " +
+            "last_message_id = CASE WHEN ? > COALESCE(last_message_id, 0) THEN ? ELSE last_message_id END " +
+            "WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChatroomCounters chatroomCounters;
+
+    private final ConcurrentHashMap<Long, Activity> pending = new ConcurrentHashMap<>();
+
+    public static String preview(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.length() > Chatroom.PREVIEW_LENGTH ? content.substring(0, Chatroom.PREVIEW_LENGTH) : content;
+    }
+
+    public void recordActivity(Chatroom chatroom, LocalDateTime timestamp) {
+        recordActivity(chatroom.getId(), chatroom.getUser1().getId(), chatroom.getUser2().getId(), timestamp);
+    }
+
+    public void recordActivity(Long chatroomId, Long user1Id, Long user2Id, LocalDateTime timestamp) {
+        pending.merge(chatroomId, new Activity(user1Id, user2Id, timestamp, null, null, null), Activity::combine);
+    }
+
+    // Applied after commit, so a rolled-back send never shows up in previews or counts
+    public void recordMessage(Long chatroomId, Long user1Id, Long user2Id,
+                              Long messageId, Long senderId, String content, LocalDateTime sentAt) {
+        Activity activity = new Activity(user1Id, user2Id, sentAt, messageId, senderId, preview(content));
+        afterCommit(() -> {
+            pending.merge(chatroomId, activity, Activity::combine);
+            chatroomCounters.recordMessage(chatroomId, user1Id, user2Id, senderId);
+        });
+    }
+
+    // Keeps a not yet flushed preview in step with an edit of that message
+    public void recordEdit(Long chatroomId, Long messageId, String content) {
+        afterCommit(() -> pending.computeIfPresent(chatroomId, (id, activity) ->
+                messageId.equals(activity.lastMessageId) ? activity.withPreview(preview(content)) : activity));
+    }
+
+    // Drops a deleted message that is still the pending preview, so the flush does not resurrect it
+    public void recordDeletion(Long chatroomId, Long user1Id, Long user2Id, Long messageId) {
+        afterCommit(() -> {
+            pending.computeIfPresent(chatroomId, (id, activity) ->
+                    messageId.equals(activity.lastMessageId) ? activity.withoutLastMessage() : activity);
+            chatroomCounters.recordDeletion(chatroomId, user1Id, user2Id);
+        });
+    }
+
+    public Optional<Long> getPendingLastMessageId(Long chatroomId) {
+        Activity activity = pending.get(chatroomId);
+        return activity != null ? Optional.ofNullable(activity.lastMessageId) : Optional.empty();
+    }
+
+    public Optional<LocalDateTime> getPendingActivity(Long chatroomId) {
+        Activity activity = pending.get(chatroomId);
+        return activity != null ? Optional.of(activity.lastActivity) : Optional.empty();
+    }
+
+    public Map<Long, LocalDateTime> getPendingActivityForUser(Long userId) {
+        Map<Long, LocalDateTime> result = new HashMap<>();
+        pending.forEach((chatroomId, activity) -> {
+            if (activity.user1Id.equals(userId) || activity.user2Id.equals(userId)) {
+                result.put(chatroomId, activity.lastActivity);
+            }
+        });
+        return result;
+    }
+
+    // Overlays activity not yet flushed onto an inbox entry read from the database
+    public void applyPending(Long userId, InboxEntryDto entry) {
+        Activity activity = pending.get(entry.getChatroomId());
+        if (activity == null) {
+            return;
+        }
+        if (entry.getUpdatedAt() == null || activity.lastActivity.isAfter(entry.getUpdatedAt())) {
+            entry.setUpdatedAt(activity.lastActivity);
+        }
+        if (activity.lastMessageId != null
+                && (entry.getLastMessageId() == null || activity.lastMessageId > entry.getLastMessageId())) {
+            entry.setLastMessageId(activity.lastMessageId);
+            entry.setLastMessageSenderId(activity.lastMessageSenderId);
+            entry.setLastMessagePreview(activity.lastMessagePreview);
+            entry.setLastMessageAt(activity.lastActivity);
+        }
+    }
+
+    public void forget(Long chatroomId) {
+        pending.remove(chatroomId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.chatroom.activity.flush-interval-ms:500}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Activity> dirty = new HashMap<>();
+        for (Long chatroomId : pending.keySet()) {
+            Activity activity = pending.remove(chatroomId);
+            if (activity != null) {
+                dirty.put(chatroomId, activity);
+            }
+        }
+
+        List<Long> chatroomIds = new ArrayList<>(dirty.keySet());
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    Long chatroomId = chatroomIds.get(i);
+                    Activity activity = dirty.get(chatroomId);
+                    Timestamp timestamp = Timestamp.valueOf(activity.lastActivity);
+                    long messageId = activity.lastMessageId != null ? activity.lastMessageId : 0L;
+                    ps.setTimestamp(1, timestamp);
+                    ps.setTimestamp(2, timestamp);
+                    ps.setLong(3, messageId);
+                    ps.setString(4, activity.lastMessagePreview);
+                    ps.setLong(5, messageId);
+                    if (activity.lastMessageSenderId != null) {
+                        ps.setLong(6, activity.lastMessageSenderId);
+                    } else {
+                        ps.setNull(6, Types.BIGINT);
+                    }
+                    ps.setLong(7, messageId);
+                    ps.setTimestamp(8, timestamp);
+                    ps.setLong(9, messageId);
+                    ps.setLong(10, messageId);
+                    ps.setLong(11, chatroomId);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return chatroomIds.size();
+                }
+            });
+        } catch (RuntimeException e) {
+            // Put the activity back so the next flush retries it
+            logger.error("Failed to flush activity for {} chatrooms: {}", dirty.size(), e.getMessage());
+            dirty.forEach((chatroomId, activity) -> pending.merge(chatroomId, activity, Activity::combine));
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static class Activity {
+
+        private final Long user1Id;
+        private final Long user2Id;
+        private final LocalDateTime lastActivity;
+        private final Long lastMessageId;
+        private final Long lastMessageSenderId;
+        private final String lastMessagePreview;
+
+        private Activity(Long user1Id, Long user2Id, LocalDateTime lastActivity, Long lastMessageId,
+                         Long lastMessageSenderId, String lastMessagePreview) {
+            this.user1Id = user1Id;
+            this.user2Id = user2Id;
+            this.lastActivity = lastActivity;
+            this.lastMessageId = lastMessageId;
+            this.lastMessageSenderId = lastMessageSenderId;
+            this.lastMessagePreview = lastMessagePreview;
+        }
+
+        private Activity withPreview(String preview) {
+            return new Activity(user1Id, user2Id, lastActivity, lastMessageId, lastMessageSenderId, preview);
+        }
+
+        private Activity withoutLastMessage() {
+            return new Activity(user1Id, user2Id, lastActivity, null, null, null);
+        }
+
+        private static Activity combine(Activity a, Activity b) {
+            LocalDateTime lastActivity = a.lastActivity.isAfter(b.lastActivity) ? a.lastActivity : b.lastActivity;
+            Activity newest = b.lastMessageId == null
+                    || (a.lastMessageId != null && a.lastMessageId > b.lastMessageId) ? a : b;
+            return new Activity(a.user1Id, a.user2Id, lastActivity, newest.lastMessageId,
+                    newest.lastMessageSenderId, newest.lastMessagePreview);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.repository.ChatroomRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind message and unread counts per chatroom. Sends and deletes bump striped
+ * LongAdders, so concurrent writes to the same room never contend, and the deltas are
+ * added to the chatroom's counter columns in one batched UPDATE per flush interval.
+ * Message counts are read through an in-memory copy of the flushed column, so a count
+ * is a map lookup plus the pending delta. Other instances flush into the same column, so
+ * a copy is reloaded once it is older than the cache TTL.
+ */
+@Component
+public class ChatroomCounters {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatroomCounters.class);
+
+    private static final String FLUSH_SQL =
+            "UPDATE chatrooms SET message_count = message_count + ?, " +
+            "user1_unread_count = user1_unread_count + ?, " +
+            "user2_unread_count = user2_unread_count + ? WHERE id = ?";
+
+    // The watermark only moves forward, so a late acknowledgement cannot resurrect read messages
+    private static final String ACKNOWLEDGE_USER1_SQL =
+            "UPDATE chatrooms SET user1_unread_count = ?, user1_read_upto = ? " +
+            "WHERE id = ? AND COALESCE(user1_read_upto, 0) < ?";
+
+    private static final String ACKNOWLEDGE_USER2_SQL =
+            "UPDATE chatrooms SET user2_unread_count = ?, user2_read_upto = ? " +
+            "WHERE id = ? AND COALESCE(user2_read_upto, 0) < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Value("${app.chatroom.message-count.max-cached-rooms:100000}")
+    private int maxCachedRooms;
+
+    @Value("${app.chatroom.message-count.cache-ttl-ms:10000}")
+    private long cacheTtlMs;
+
+    private final ConcurrentHashMap<Long, Counters> rooms = new ConcurrentHashMap<>();
+    // Only touched by the flush, under the write lock
+    private final Map<Long, Counters> retired = new HashMap<>();
+    // Flushed message_count values, read through from the database
+    private final ConcurrentHashMap<Long, FlushedCount> flushedCounts = new ConcurrentHashMap<>();
+    // Bumped whenever flushed counts change, so a load that raced with a flush is not installed stale
+    private final AtomicLong flushEpoch = new AtomicLong();
+    // Flushes take the write lock; acknowledgements and repairs, which overwrite columns, take the read lock
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    public void recordMessage(Long chatroomId, Long user1Id, Long user2Id, Long senderId) {
+        Counters counters = rooms.computeIfAbsent(chatroomId, id -> new Counters(user1Id, user2Id));
+        counters.messages.increment();
+        (user1Id.equals(senderId) ? counters.user2 : counters.user1).increment();
+    }
+
+    public void recordDeletion(Long chatroomId, Long user1Id, Long user2Id) {
+        rooms.computeIfAbsent(chatroomId, id -> new Counters(user1Id, user2Id)).messages.decrement();
+    }
+
+    public long messageCount(Long chatroomId) {
+        FlushedCount cached = flushedCounts.get(chatroomId);
+        long flushed;
+        if (cached == null || System.currentTimeMillis() - cached.loadedAt > cacheTtlMs) {
+            flushed = loadMessageCount(chatroomId);
+        } else {
+            flushed = cached.count;
+        }
+        Counters counters = rooms.get(chatroomId);
+        return flushed + (counters != null ? counters.messages.sum() : 0);
+    }
+
+    // Message count delta not yet flushed
+    public long pendingMessages(Long chatroomId) {
+        Counters counters = rooms.get(chatroomId);
+        return counters != null ? counters.messages.sum() : 0;
+    }
+
+    // Unread increments not yet flushed for one participant
+    public long pendingUnread(Long chatroomId, Long userId) {
+        Counters counters = rooms.get(chatroomId);
+        if (counters == null) {
+            return 0;
+        }
+        return counters.unreadFor(userId).sum();
+    }
+
+    public long pendingUnreadForUser(Long userId) {
+        long total = 0;
+        for (Counters counters : rooms.values()) {
+            if (counters.user1Id.equals(userId) || counters.user2Id.equals(userId)) {
+                total += counters.unreadFor(userId).sum();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Sets the participant's unread count to {@code unread} and their read watermark to
+     * {@code messageId}, discarding unread increments not yet flushed. Returns false when
+     * the watermark was already at or past {@code messageId}.
+     */
+    public boolean acknowledge(Long chatroomId, boolean forUser1, long messageId, long unread) {
+        flushLock.readLock().lock();
+        try {
+            Counters counters = rooms.get(chatroomId);
+            LongAdder adder = counters == null ? null : forUser1 ? counters.user1 : counters.user2;
+            long discarded = adder != null ? adder.sumThenReset() : 0;
+            int updated = jdbcTemplate.update(forUser1 ? ACKNOWLEDGE_USER1_SQL : ACKNOWLEDGE_USER2_SQL,
+                    unread, messageId, chatroomId, messageId);
+            if (updated == 0 && adder != null) {
+                adder.add(discarded);
+            }
+            return updated > 0;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a message-count recount for a range of chatrooms. Pending message deltas of
+     * those rooms are discarded first, since the recount already includes them; the
+     * recount returns the IDs of the rooms it corrected.
+     */
+    public List<Long> recount(long fromId, long toId, RecountQuery query) {
+        flushLock.readLock().lock();
+        try {
+            rooms.forEach((chatroomId, counters) -> {
+                if (chatroomId >= fromId && chatroomId <= toId) {
+                    counters.messages.reset();
+                }
+            });
+            List<Long> corrected = query.run(fromId, toId);
+            flushEpoch.incrementAndGet();
+            flushedCounts.keySet().removeIf(chatroomId -> chatroomId >= fromId && chatroomId <= toId);
+            return corrected;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    public void forget(Long chatroomId) {
+        rooms.remove(chatroomId);
+        flushedCounts.remove(chatroomId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.chatroom.activity.flush-interval-ms:500}")
+    public void flush() {
+        if (rooms.isEmpty() && retired.isEmpty()) {
+            return;
+        }
+
+        flushLock.writeLock().lock();
+        try {
+            Map<Long, Counters> drained = new HashMap<>();
+            // Counters retired by the previous flush: any increment that raced with their removal has landed by now
+            retired.forEach((chatroomId, counters) -> drainInto(drained, chatroomId, counters));
+            retired.clear();
+            for (Map.Entry<Long, Counters> entry : rooms.entrySet()) {
+                if (!drainInto(drained, entry.getKey(), entry.getValue())) {
+                    // Idle room: stop tracking it, draining once more on the next flush
+                    rooms.remove(entry.getKey(), entry.getValue());
+                    retired.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (drained.isEmpty()) {
+                return;
+            }
+
+            List<Long> chatroomIds = new ArrayList<>(drained.keySet());
+            List<Object[]> batchArgs = new ArrayList<>(chatroomIds.size());
+            for (Long chatroomId : chatroomIds) {
+                Counters deltas = drained.get(chatroomId);
+                batchArgs.add(new Object[]{deltas.messages.sum(), deltas.user1.sum(), deltas.user2.sum(), chatroomId});
+                flushedCounts.computeIfPresent(chatroomId, (id, count) -> count.plus(deltas.messages.sum()));
+            }
+            flushEpoch.incrementAndGet();
+
+            try {
+                jdbcTemplate.batchUpdate(FLUSH_SQL, batchArgs);
+            } catch (RuntimeException e) {
+                // Put the deltas back so the next flush retries them
+                logger.error("Failed to flush counters for {} chatrooms: {}", chatroomIds.size(), e.getMessage());
+                drained.forEach((chatroomId, deltas) -> {
+                    Counters counters = rooms.computeIfAbsent(chatroomId, id -> new Counters(deltas.user1Id, deltas.user2Id));
+                    counters.messages.add(deltas.messages.sum());
+                    counters.user1.add(deltas.user1.sum());
+                    counters.user2.add(deltas.user2.sum());
+                    flushedCounts.computeIfPresent(chatroomId, (id, count) -> count.plus(-deltas.messages.sum()));
+                });
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    // Adds the counters' pending deltas to the room's entry in drained; false when there were none
+    private static boolean drainInto(Map<Long, Counters> drained, Long chatroomId, Counters counters) {
+        long messages = counters.messages.sumThenReset();
+        long user1 = counters.user1.sumThenReset();
+        long user2 = counters.user2.sumThenReset();
+        if (messages == 0 && user1 == 0 && user2 == 0) {
+            return false;
+        }
+        Counters deltas = drained.computeIfAbsent(chatroomId, id -> new Counters(counters.user1Id, counters.user2Id));
+        deltas.messages.add(messages);
+        deltas.user1.add(user1);
+        deltas.user2.add(user2);
+        return true;
+    }
+
+    private long loadMessageCount(Long chatroomId) {
+        long epoch = flushEpoch.get();
+        long count = chatroomRepository.findMessageCount(chatroomId)
+                .orElseThrow(() -> new RuntimeException("Chatroom not found with id: " + chatroomId));
+        flushLock.readLock().lock();
+        try {
+            if (flushEpoch.get() == epoch) {
+                if (flushedCounts.size() >= maxCachedRooms) {
+                    // Crude bound: start over and let hot rooms reload on demand
+                    flushedCounts.clear();
+                }
+                // Replaces an expired copy too; the epoch check above rules out a racing flush
+                flushedCounts.put(chatroomId, new FlushedCount(count, System.currentTimeMillis()));
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        return count;
+    }
+
+    private record FlushedCount(long count, long loadedAt) {
+
+        private FlushedCount plus(long delta) {
+            return new FlushedCount(count + delta, loadedAt);
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecountQuery {
+
+        List<Long> run(long fromId, long toId);
+    }
+
+    private static class Counters {
+
+        private final Long user1Id;
+        private final Long user2Id;
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder user1 = new LongAdder();
+        private final LongAdder user2 = new LongAdder();
+
+        private Counters(Long user1Id, Long user2Id) {
+            this.user1Id = user1Id;
+            this.user2Id = user2Id;
+        }
+
+        private LongAdder unreadFor(Long userId) {
+            return user1Id.equals(userId) ? user1 : user2;
+        }
+    }
+}
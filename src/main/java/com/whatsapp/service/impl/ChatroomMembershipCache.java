@@ -0,0 +1,238 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.repository.ChatroomRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Maps a chatroom ID to its two participant IDs so sends can be authorized without a query.
+ * Entries live in one open-addressing long[] table (key, user1, user2 per slot), so lookups
+ * neither box nor allocate. Reads are optimistic; writers take the lock exclusively.
+ */
+@Component
+public class ChatroomMembershipCache {
+
+    private static final int SLOT_WIDTH = 3;
+    private static final long EMPTY = 0L; // chatroom and user IDs start at 1
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Value("${app.chatroom.membership-cache.max-entries:1000000}")
+    private int maxEntries;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] table = new long[16 * SLOT_WIDTH];
+    private int size;
+    // Bumped by every removal, so a load that raced one is not installed
+    private long removals;
+
+    public boolean isMember(long chatroomId, long userId) {
+        return getUser1Id(chatroomId) == userId || getUser2Id(chatroomId) == userId;
+    }
+
+    public void checkMember(long chatroomId, long userId) {
+        if (!isMember(chatroomId, userId)) {
+            throw new RuntimeException("User is not part of this chatroom");
+        }
+    }
+
+    // Throws if the chatroom does not exist
+    public void checkExists(long chatroomId) {
+        getUser1Id(chatroomId);
+    }
+
+    public long getOtherParticipant(long chatroomId, long userId) {
+        long user1Id = getUser1Id(chatroomId);
+        return user1Id == userId ? getUser2Id(chatroomId) : user1Id;
+    }
+
+    public long getUser1Id(long chatroomId) {
+        return participant(chatroomId, 1);
+    }
+
+    public long getUser2Id(long chatroomId) {
+        return participant(chatroomId, 2);
+    }
+
+    public void put(long chatroomId, long user1Id, long user2Id) {
+        long stamp = lock.writeLock();
+        try {
+            insert(chatroomId, user1Id, user2Id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Removes the room once the deleting transaction commits, so a load racing the delete cannot put it back
+    public void removeAfterCommit(long chatroomId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remove(chatroomId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remove(chatroomId);
+            }
+        });
+    }
+
+    public void remove(long chatroomId) {
+        long stamp = lock.writeLock();
+        try {
+            removals++;
+            int slot = probe(table, chatroomId);
+            if (table[slot] == EMPTY) {
+                return;
+            }
+            table[slot] = EMPTY;
+            size--;
+            shiftBack(slot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // field 1 is user1, field 2 is user2; loads the chatroom on a miss
+    private long participant(long chatroomId, int field) {
+        long userId = find(chatroomId, field);
+        if (userId != EMPTY) {
+            return userId;
+        }
+        return load(chatroomId)[field - 1];
+    }
+
+    private long[] load(long chatroomId) {
+        long removalsBefore = removalCount();
+        List<Object[]> rows = chatroomRepository.findParticipantIds(chatroomId);
+        if (rows.isEmpty()) {
+            throw new RuntimeException("Chatroom not found with id: " + chatroomId);
+        }
+        long user1Id = ((Number) rows.get(0)[0]).longValue();
+        long user2Id = ((Number) rows.get(0)[1]).longValue();
+        long stamp = lock.writeLock();
+        try {
+            // A removal since the query may be this room's delete; leave the next lookup to reload
+            if (removals == removalsBefore) {
+                insert(chatroomId, user1Id, user2Id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return new long[]{user1Id, user2Id};
+    }
+
+    private long removalCount() {
+        long stamp = lock.readLock();
+        try {
+            return removals;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Caller holds the write lock
+    private void insert(long chatroomId, long user1Id, long user2Id) {
+        if (size >= maxEntries) {
+            // Crude bound: start over and let hot rooms reload on demand
+            table = new long[16 * SLOT_WIDTH];
+            size = 0;
+        }
+        if ((size + 1) * 2 > capacity(table)) {
+            resize(capacity(table) * 2);
+        }
+        int slot = probe(table, chatroomId);
+        if (table[slot] == EMPTY) {
+            size++;
+        }
+        table[slot] = chatroomId;
+        table[slot + 1] = user1Id;
+        table[slot + 2] = user2Id;
+    }
+
+    private long find(long chatroomId, int field) {
+        long stamp = lock.tryOptimisticRead();
+        long result = findIn(table, chatroomId, field);
+        if (lock.validate(stamp)) {
+            return result;
+        }
+        stamp = lock.readLock();
+        try {
+            return findIn(table, chatroomId, field);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Returns the participant in the given field of the room's slot, or EMPTY when the room is not cached
+    private static long findIn(long[] table, long chatroomId, int field) {
+        int capacity = capacity(table);
+        int index = indexFor(chatroomId, capacity);
+        // Bounded so a torn optimistic read cannot spin forever
+        for (int i = 0; i < capacity; i++) {
+            int slot = index * SLOT_WIDTH;
+            long key = table[slot];
+            if (key == chatroomId) {
+                return table[slot + field];
+            }
+            if (key == EMPTY) {
+                return EMPTY;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        return EMPTY;
+    }
+
+    private static int probe(long[] table, long chatroomId) {
+        int capacity = capacity(table);
+        int index = indexFor(chatroomId, capacity);
+        while (table[index * SLOT_WIDTH] != EMPTY && table[index * SLOT_WIDTH] != chatroomId) {
+            index = (index + 1) & (capacity - 1);
+        }
+        return index * SLOT_WIDTH;
+    }
+
+    // Backward-shift deletion keeps linear probing chains intact without tombstones
+    private void shiftBack(int freedSlot) {
+        int capacity = capacity(table);
+        int free = freedSlot / SLOT_WIDTH;
+        int index = (free + 1) & (capacity - 1);
+        while (table[index * SLOT_WIDTH] != EMPTY) {
+            int home = indexFor(table[index * SLOT_WIDTH], capacity);
+            boolean movable = free <= index ? (home <= free || home > index) : (home <= free && home > index);
+            if (movable) {
+                System.arraycopy(table, index * SLOT_WIDTH, table, free * SLOT_WIDTH, SLOT_WIDTH);
+                table[index * SLOT_WIDTH] = EMPTY;
+                free = index;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+    }
+
+    private void resize(int newCapacity) {
+        long[] old = table;
+        long[] resized = new long[newCapacity * SLOT_WIDTH];
+        for (int slot = 0; slot < old.length; slot += SLOT_WIDTH) {
+            if (old[slot] != EMPTY) {
+                System.arraycopy(old, slot, resized, probe(resized, old[slot]), SLOT_WIDTH);
+            }
+        }
+        table = resized;
+    }
+
+    private static int capacity(long[] table) {
+        return table.length / SLOT_WIDTH;
+    }
+
+    private static int indexFor(long key, int capacity) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+}
@@ -1,19 +1,31 @@
 package com.whatsapp.service.impl;
 
 import com.whatsapp.dto.ChatroomDto;
+import com.whatsapp.dto.InboxEntryDto;
 import com.whatsapp.dto.UserDto;
 import com.whatsapp.model.Chatroom;
 import com.whatsapp.model.User;
 import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageRepository;
 import com.whatsapp.repository.UserRepository;
 import com.whatsapp.service.ChatroomService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -25,6 +37,24 @@ public class ChatroomServiceImpl implements ChatroomService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ChatroomActivityTracker chatroomActivityTracker;
+
+    @Autowired
+    private ChatroomMembershipCache chatroomMembershipCache;
+
+    @Autowired
+    private RecentMessagesCache recentMessagesCache;
+
+    @Autowired
+    private ChatroomCounters chatroomCounters;
+
+    @Autowired
+    private ChangeVersions changeVersions;
+
     @Override
     public ChatroomDto createChatroom(Long user1Id, Long user2Id) {
         User user1 = userRepository.findById(user1Id)
@@ -41,6 +71,7 @@ public class ChatroomServiceImpl implements ChatroomService {
 
         Chatroom chatroom = new Chatroom(user1, user2);
         Chatroom savedChatroom = chatroomRepository.save(chatroom);
+        chatroomMembershipCache.put(savedChatroom.getId(), user1.getId(), user2.getId());
         return convertToDto(savedChatroom);
     }
 
@@ -64,14 +95,95 @@ public class ChatroomServiceImpl implements ChatroomService {
                 .map(this::convertToDto);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<String> getUserChatroomsTag(Long userId) {
+        return changeVersions.chatroomListTag(userId);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Page<ChatroomDto> getUserChatrooms(Long userId, Pageable pageable) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found with id: " + userId));
 
-        return chatroomRepository.findByUserOrderByUpdatedAtDesc(user, pageable)
-                .map(this::convertToDto);
+        // Activity not yet flushed by the tracker can reorder the inbox
+        Map<Long, LocalDateTime> pendingActivity = chatroomActivityTracker.getPendingActivityForUser(userId);
+        if (pendingActivity.isEmpty() || pageable.isUnpaged()) {
+            return chatroomRepository.findByUserOrderByUpdatedAtDesc(user, pageable).map(this::convertToDto);
+        }
+
+        // See getInbox: the page is cut from the leading rows with the activity overlaid
+        Page<Chatroom> leading = chatroomRepository.findByUserOrderByUpdatedAtDesc(user,
+                PageRequest.of(0, leadingRows(pageable, pendingActivity.size())));
+        List<Chatroom> chatrooms = new ArrayList<>(leading.getContent());
+        Set<Long> missingIds = new HashSet<>(pendingActivity.keySet());
+        chatrooms.forEach(chatroom -> missingIds.remove(chatroom.getId()));
+        if (!missingIds.isEmpty()) {
+            chatrooms.addAll(chatroomRepository.findAllById(missingIds));
+        }
+
+        List<ChatroomDto> chatroomDtos = chatrooms.stream()
+                .map(this::convertToDto)
+                .sorted(Comparator.comparing(ChatroomDto::getUpdatedAt,
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .toList();
+        return new PageImpl<>(chatroomDtos, pageable, leading.getTotalElements());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<InboxEntryDto> getInbox(Long userId, Pageable pageable) {
+        // Sends not yet flushed by the tracker update previews and counts, and can reorder the inbox
+        Map<Long, LocalDateTime> pendingActivity = chatroomActivityTracker.getPendingActivityForUser(userId);
+        if (pendingActivity.isEmpty()) {
+            List<InboxEntryDto> entries = chatroomRepository.findInbox(userId, pageable);
+            entries.forEach(entry -> addPendingUnread(userId, entry));
+            return entries;
+        }
+
+        // Pending activity only moves rooms up, past at most that many rooms. Read the leading rows far
+        // enough down that every room that can land on this page is among them, overlay the activity
+        // and cut the page from that order: each page is cut from the same order, so a room pulled up
+        // onto an earlier page is neither repeated on its old page nor pushes another room off both.
+        List<InboxEntryDto> entries = new ArrayList<>(chatroomRepository.findInbox(userId, pageable.isPaged()
+                ? PageRequest.of(0, leadingRows(pageable, pendingActivity.size()))
+                : pageable));
+        Set<Long> missingIds = new HashSet<>(pendingActivity.keySet());
+        entries.forEach(entry -> missingIds.remove(entry.getChatroomId()));
+        if (!missingIds.isEmpty()) {
+            entries.addAll(chatroomRepository.findInboxEntries(userId, missingIds));
+        }
+        entries.forEach(entry -> {
+            addPendingUnread(userId, entry);
+            chatroomActivityTracker.applyPending(userId, entry);
+        });
+        return entries.stream()
+                .sorted(Comparator.comparing(InboxEntryDto::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+                        .thenComparing(InboxEntryDto::getChatroomId, Comparator.reverseOrder()))
+                .skip(pageable.isPaged() ? pageable.getOffset() : 0)
+                .limit(pageable.isPaged() ? pageable.getPageSize() : entries.size())
+                .toList();
+    }
+
+    @Override
+    public void markRead(Long chatroomId, Long userId, Long messageId) {
+        chatroomMembershipCache.checkMember(chatroomId, userId);
+
+        // Reading up to the newest message is the common case and needs no count at all
+        long lastMessageId = Math.max(chatroomRepository.findLastMessageId(chatroomId).orElse(0L),
+                chatroomActivityTracker.getPendingLastMessageId(chatroomId).orElse(0L));
+        long unread = messageId >= lastMessageId ? 0 : messageRepository.countUnreadAfter(chatroomId, messageId, userId);
+        boolean forUser1 = chatroomMembershipCache.getUser1Id(chatroomId) == userId;
+        chatroomCounters.acknowledge(chatroomId, forUser1, messageId, unread);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long getUnreadTotal(Long userId) {
+        return chatroomRepository.sumUnreadCount(userId) + chatroomCounters.pendingUnreadForUser(userId);
     }
 
     @Override
@@ -92,6 +204,19 @@ public class ChatroomServiceImpl implements ChatroomService {
             throw new RuntimeException("Chatroom not found with id: " + chatroomId);
         }
         chatroomRepository.deleteById(chatroomId);
+        chatroomActivityTracker.forget(chatroomId);
+        chatroomCounters.forget(chatroomId);
+        chatroomMembershipCache.removeAfterCommit(chatroomId);
+        recentMessagesCache.forget(chatroomId);
+    }
+
+    // Rows from the top that hold every room that can land on the page once pending activity is overlaid
+    private static int leadingRows(Pageable pageable, int pendingRooms) {
+        return (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize() + pendingRooms);
+    }
+
+    private void addPendingUnread(Long userId, InboxEntryDto entry) {
+        entry.setUnreadCount(entry.getUnreadCount() + chatroomCounters.pendingUnread(entry.getChatroomId(), userId));
     }
 
     private ChatroomDto convertToDto(Chatroom chatroom) {
@@ -103,7 +228,7 @@ public class ChatroomServiceImpl implements ChatroomService {
                 user1Dto,
                 user2Dto,
                 chatroom.getCreatedAt(),
-                chatroom.getUpdatedAt()
+                chatroomActivityTracker.getPendingActivity(chatroom.getId()).orElse(chatroom.getUpdatedAt())
         );
     }
 
@@ -0,0 +1,785 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.SearchHit;
+import com.whatsapp.model.MessageChange;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageChangeRepository;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.service.MessageSearchEngine;
+import com.whatsapp.util.BackgroundTaskRunner;
+import com.whatsapp.util.SearchTokenizer;
+import com.whatsapp.util.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process inverted index for message search, kept off the primary database's search
+ * path. It tails the same durable history delta sync reads: new messages from the messages
+ * table and edits and deletions from the message change log, both in ID order up to the
+ * commit grace period. Changes collect in an in-memory buffer that is written out as an
+ * immutable, memory-mapped {@link SearchSegment}; once there are too many, the background
+ * merge rewrites the run of adjacent segments that is cheapest to merge, so small recent
+ * segments are merged with each other and large old ones are rewritten only when their
+ * neighbours have grown to a similar size.
+ *
+ * <p>A message is indexed again when edited, so older segments can hold stale copies. The
+ * live copy of each touched message is tracked in memory (the segment sequence number that
+ * holds it, negated when deleted), rebuilt on startup from the deleted and replaced lists
+ * stored in each segment. A manifest written after every flush and merge names the current
+ * segments and the tail watermarks; on restart the index reopens those segments and catches
+ * up from the watermarks, or rebuilds from scratch when it has been down longer than the
+ * change log retention.
+ */
+@Service
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "embedded")
+public class EmbeddedMessageSearchEngine implements MessageSearchEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedMessageSearchEngine.class);
+
+    private static final String MANIFEST_FILE = "manifest.properties";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageChangeRepository messageChangeRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private MessageChangeLog messageChangeLog;
+
+    @Autowired
+    private BackgroundTaskRunner backgroundTaskRunner;
+
+    @Value("${app.search.embedded.index-dir:./data/search/}")
+    private String indexDir;
+
+    @Value("${app.search.embedded.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${app.search.embedded.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.search.embedded.flush-docs:20000}")
+    private int flushDocs;
+
+    @Value("${app.search.embedded.flush-interval-ms:60000}")
+    private long flushIntervalMs;
+
+    @Value("${app.search.embedded.max-segments:8}")
+    private int maxSegments;
+
+    @Value("${app.search.embedded.merge-factor:4}")
+    private int mergeFactor;
+
+    @Value("${app.search.embedded.fan-out-parallelism:4}")
+    private int fanOutParallelism;
+
+    @Value("${app.sync.commit-grace-ms:5000}")
+    private long commitGraceMs;
+
+    // Searches take the read lock; swapping the buffer or the segment list takes the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Ordered by sequence number, oldest first; replaced, never modified
+    private volatile List<SearchSegment> segments = List.of();
+    // Message ID -> sequence number of the segment (or buffer) holding its live copy, negated when deleted
+    private final ConcurrentHashMap<Long, Long> liveCopies = new ConcurrentHashMap<>();
+    private final AtomicLong nextFile = new AtomicLong();
+    private final AtomicBoolean merging = new AtomicBoolean();
+
+    private Path directory;
+    private Buffer buffer;
+    private long nextSeq;
+    // Tail thread only
+    private long messageWatermark;
+    private long changeWatermark;
+    private long lastFlushMillis;
+    // What the segments on disk cover, written to the manifest
+    private long flushedMessageWatermark;
+    private long flushedChangeWatermark;
+
+    private volatile boolean running;
+    private Future<?> tailer;
+    // Bounded pool for cross-chatroom searches; the work is CPU-bound, so keep it near the core count
+    private ExecutorService searchExecutor;
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(indexDir);
+        Files.createDirectories(directory);
+        nextSeq = 1;
+
+        Properties manifest = readManifest();
+        List<SearchSegment> opened = new ArrayList<>();
+        if (manifest != null) {
+            changeWatermark = Long.parseLong(manifest.getProperty("changeWatermark"));
+            if (changeWatermark < messageChangeLog.retentionFloor()) {
+                // Edits and deletions made while the index was down have been purged from the log
+                logger.warn("Search index is older than the message change retention window, rebuilding it");
+                changeWatermark = 0;
+            } else {
+                messageWatermark = Long.parseLong(manifest.getProperty("messageWatermark"));
+                nextSeq = Long.parseLong(manifest.getProperty("nextSeq"));
+                nextFile.set(Long.parseLong(manifest.getProperty("nextFile")));
+                for (String fileName : manifest.getProperty("segments").split(",")) {
+                    if (fileName.isEmpty()) {
+                        continue;
+                    }
+                    opened.add(SearchSegment.open(directory.resolve(fileName)));
+                }
+            }
+        }
+        deleteUnlisted(opened);
+
+        for (SearchSegment segment : opened) {
+            for (long messageId : segment.deletedIds()) {
+                liveCopies.put(messageId, -segment.seq());
+            }
+            for (long messageId : segment.replacedIds()) {
+                liveCopies.put(messageId, segment.seq());
+            }
+        }
+        segments = List.copyOf(opened);
+        buffer = new Buffer(nextSeq);
+        flushedMessageWatermark = messageWatermark;
+        flushedChangeWatermark = changeWatermark;
+        lastFlushMillis = System.currentTimeMillis();
+
+        searchExecutor = Executors.newFixedThreadPool(fanOutParallelism, task -> {
+            Thread thread = new Thread(task, "search-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        tailer = backgroundTaskRunner.start("search-index-tail", this::tailLoop);
+        logger.info("Embedded search index opened with {} segments, catching up from message {} and change {}",
+                opened.size(), messageWatermark, changeWatermark);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        searchExecutor.shutdown();
+        try {
+            tailer.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Search index tail did not stop cleanly: {}", e.getMessage());
+            return;
+        }
+        flush();
+    }
+
+    @Override
+    public List<Long> search(Long chatroomId, List<String> words, int page, int limit) {
+        Map<Long, Integer> scores;
+        lock.readLock().lock();
+        try {
+            scores = match(chatroomId, words);
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Most occurrences of the words first, newest first among equals
+        return scores.entrySet().stream()
+                .map(score -> new SearchHit(score.getKey(), score.getValue()))
+                .sorted(SearchHit.BEST_FIRST)
+                .skip((long) page * limit)
+                .limit(limit)
+                .map(SearchHit::messageId)
+                .toList();
+    }
+
+    @Override
+    public List<SearchHit> searchForUser(Long userId, List<String> words, SearchHit after, int limit) {
+        List<Long> chatroomIds = chatroomRepository.findIdsByUser(userId);
+        int tasks = Math.min(fanOutParallelism, chatroomIds.size());
+        PriorityQueue<SearchHit> top;
+        if (tasks <= 1) {
+            top = topHits(chatroomIds, words, after, limit);
+        } else {
+            // Each task ranks an interleaved share of the rooms into its own top K; the shares are merged here
+            List<Future<PriorityQueue<SearchHit>>> shares = new ArrayList<>(tasks);
+            for (int task = 0; task < tasks; task++) {
+                List<Long> share = new ArrayList<>(chatroomIds.size() / tasks + 1);
+                for (int i = task; i < chatroomIds.size(); i += tasks) {
+                    share.add(chatroomIds.get(i));
+                }
+                shares.add(searchExecutor.submit(() -> topHits(share, words, after, limit)));
+            }
+            top = new PriorityQueue<>(SearchHit.BEST_FIRST.reversed());
+            try {
+                for (Future<PriorityQueue<SearchHit>> share : shares) {
+                    for (SearchHit hit : share.get()) {
+                        offer(top, hit, limit);
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Search failed: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Search interrupted");
+            }
+        }
+        List<SearchHit> hits = new ArrayList<>(top);
+        hits.sort(SearchHit.BEST_FIRST);
+        return hits;
+    }
+
+    // The best limit hits after the cursor across the given rooms, worst at the head
+    private PriorityQueue<SearchHit> topHits(List<Long> chatroomIds, List<String> words, SearchHit after, int limit) {
+        PriorityQueue<SearchHit> top = new PriorityQueue<>(SearchHit.BEST_FIRST.reversed());
+        lock.readLock().lock();
+        try {
+            for (Long chatroomId : chatroomIds) {
+                match(chatroomId, words).forEach((messageId, score) -> {
+                    SearchHit hit = new SearchHit(messageId, score);
+                    if (after == null || SearchHit.BEST_FIRST.compare(hit, after) > 0) {
+                        offer(top, hit, limit);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top;
+    }
+
+    private static void offer(PriorityQueue<SearchHit> top, SearchHit hit, int limit) {
+        if (top.size() < limit) {
+            top.add(hit);
+        } else if (SearchHit.BEST_FIRST.compare(hit, top.peek()) < 0) {
+            top.poll();
+            top.add(hit);
+        }
+    }
+
+    // Message ID -> summed occurrences of the words, for messages matching every word; needs the read lock
+    private Map<Long, Integer> match(long chatroomId, List<String> words) {
+        Map<Long, Integer> scores = null;
+        // Later words only look at messages the earlier ones matched
+        for (String word : words) {
+            byte[] prefix = word.getBytes(StandardCharsets.UTF_8);
+            Map<Long, Integer> matches = new HashMap<>();
+            Set<Long> candidates = scores != null ? scores.keySet() : null;
+            buffer.collect(chatroomId, prefix, candidates, matches);
+            for (SearchSegment segment : segments) {
+                collect(segment, chatroomId, prefix, candidates, matches);
+            }
+            if (scores == null) {
+                scores = matches;
+            } else {
+                scores.keySet().retainAll(matches.keySet());
+                scores.replaceAll((messageId, score) -> score + matches.get(messageId));
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return scores != null ? scores : Map.of();
+    }
+
+    private void collect(SearchSegment segment, long chatroomId, byte[] prefix, Set<Long> candidates,
+                         Map<Long, Integer> matches) {
+        for (int entry = segment.lowerBound(chatroomId, prefix); segment.hasPrefix(entry, chatroomId, prefix); entry++) {
+            segment.forEachPosting(entry, (messageId, frequency) -> {
+                if ((candidates == null || candidates.contains(messageId)) && isLive(messageId, segment.seq())) {
+                    matches.merge(messageId, frequency, Integer::sum);
+                }
+            });
+        }
+    }
+
+    private boolean isLive(long messageId, long seq) {
+        Long liveSeq = liveCopies.get(messageId);
+        return liveSeq == null || liveSeq == seq;
+    }
+
+    private void tailLoop() {
+        while (running) {
+            try {
+                if (tail()) {
+                    Thread.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Search index tail failed: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Applies one batch of messages or changes; true when caught up
+    private boolean tail() throws IOException {
+        // Held back like delta sync watermarks, so a message still committing is not skipped
+        long upTo = SnowflakeIdGenerator.minIdAt(Instant.now().minusMillis(commitGraceMs)) - 1;
+
+        List<Object[]> messages = messageRepository.findContentBetween(messageWatermark, upTo, PageRequest.of(0, batchSize));
+        if (!messages.isEmpty()) {
+            lock.writeLock().lock();
+            try {
+                for (Object[] row : messages) {
+                    buffer.add((Long) row[0], (Long) row[1], (String) row[2]);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        boolean messagesDone = messages.size() < batchSize;
+        messageWatermark = messagesDone ? Math.max(messageWatermark, upTo) : (Long) messages.get(messages.size() - 1)[0];
+
+        // An edit or deletion is always newer than its message, so changes never overtake messages
+        boolean changesDone = true;
+        if (messagesDone) {
+            List<MessageChange> changes = messageChangeRepository.findBetween(changeWatermark, upTo, PageRequest.of(0, batchSize));
+            if (!changes.isEmpty()) {
+                lock.writeLock().lock();
+                try {
+                    for (MessageChange change : changes) {
+                        // A late creation carries the content the message tail skipped, like an edit
+                        if (change.getChangeType() != MessageChange.ChangeType.DELETED) {
+                            buffer.add(change.getMessageId(), change.getChatroomId(), change.getContent());
+                            buffer.replaced.add(change.getMessageId());
+                            buffer.deleted.remove(change.getMessageId());
+                            liveCopies.put(change.getMessageId(), buffer.seq);
+                        } else {
+                            buffer.remove(change.getMessageId());
+                            buffer.deleted.add(change.getMessageId());
+                            buffer.replaced.remove(change.getMessageId());
+                            liveCopies.put(change.getMessageId(), -buffer.seq);
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            changesDone = changes.size() < batchSize;
+            changeWatermark = changesDone ? Math.max(changeWatermark, upTo) : changes.get(changes.size() - 1).getId();
+        }
+
+        if (buffer.size() >= flushDocs || System.currentTimeMillis() - lastFlushMillis >= flushIntervalMs) {
+            flush();
+        }
+        if (segments.size() > maxSegments && merging.compareAndSet(false, true)) {
+            backgroundTaskRunner.start("search-index-merge", () -> {
+                try {
+                    merge();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Search index merge failed: {}", e.getMessage(), e);
+                } finally {
+                    merging.set(false);
+                }
+            });
+        }
+        return messagesDone && changesDone;
+    }
+
+    // Called by the tail thread, or on shutdown once it has stopped
+    private void flush() throws IOException {
+        SearchSegment written = null;
+        if (!buffer.isEmpty()) {
+            // Only the tail thread changes the buffer, so it can be written without blocking searches
+            Path path = directory.resolve(segmentFileName(nextFile.getAndIncrement()));
+            written = writeSegment(path, () -> buffer.writeTo(path));
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (written != null) {
+                List<SearchSegment> updated = new ArrayList<>(segments);
+                updated.add(written);
+                segments = List.copyOf(updated);
+                nextSeq++;
+                buffer = new Buffer(nextSeq);
+            }
+            flushedMessageWatermark = messageWatermark;
+            flushedChangeWatermark = changeWatermark;
+            writeManifest();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastFlushMillis = System.currentTimeMillis();
+    }
+
+    // Merges a run of adjacent segments into one, dropping stale copies. Segments stay in sequence
+    // order, so which copy of a message is live is still decided by replaying them oldest first.
+    private void merge() throws IOException {
+        List<SearchSegment> current = segments;
+        int length = Math.min(Math.max(mergeFactor, 2), current.size());
+        int first = cheapestRun(current, length);
+        List<SearchSegment> inputs = current.subList(first, first + length);
+        long firstSeq = inputs.get(0).seq();
+        long seq = inputs.get(inputs.size() - 1).seq();
+        // Older segments can hold copies the run deleted or replaced, so the merged segment keeps those lists
+        boolean oldest = first == 0;
+        long[] deleted = oldest ? new long[0] : stateIds(inputs, firstSeq, seq, true);
+        long[] replaced = oldest ? new long[0] : stateIds(inputs, firstSeq, seq, false);
+        Path path = directory.resolve(segmentFileName(nextFile.getAndIncrement()));
+        SearchSegment merged = writeSegment(path, () -> writeMerged(path, inputs, seq, deleted, replaced));
+
+        lock.writeLock().lock();
+        try {
+            // Segments flushed during the merge come after the inputs, which are still in place
+            List<SearchSegment> updated = new ArrayList<>(segments.subList(0, first));
+            updated.add(merged);
+            updated.addAll(segments.subList(first + inputs.size(), segments.size()));
+            segments = List.copyOf(updated);
+            if (oldest) {
+                // The merged segment holds exactly the copies live as of its sequence number
+                liveCopies.values().removeIf(liveSeq -> Math.abs(liveSeq) <= seq);
+            } else {
+                liveCopies.replaceAll((messageId, liveSeq) -> Math.abs(liveSeq) >= firstSeq && Math.abs(liveSeq) <= seq
+                        ? Long.signum(liveSeq) * seq : liveSeq);
+            }
+            writeManifest();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (SearchSegment input : inputs) {
+            Files.deleteIfExists(directory.resolve(input.fileName()));
+        }
+        logger.info("Merged {} of {} search index segments", inputs.size(), current.size());
+    }
+
+    // Start of the run of adjacent segments of the given length with the fewest bytes between them
+    private static int cheapestRun(List<SearchSegment> current, int length) {
+        int best = 0;
+        long bestBytes = Long.MAX_VALUE;
+        for (int start = 0; start + length <= current.size(); start++) {
+            long bytes = 0;
+            for (int i = start; i < start + length; i++) {
+                bytes += current.get(i).sizeBytes();
+            }
+            if (bytes < bestBytes) {
+                bestBytes = bytes;
+                best = start;
+            }
+        }
+        return best;
+    }
+
+    // Messages the run deleted (or replaced) whose state is still decided by a segment of the run, sorted
+    private long[] stateIds(List<SearchSegment> inputs, long firstSeq, long lastSeq, boolean deleted) {
+        TreeSet<Long> ids = new TreeSet<>();
+        for (SearchSegment input : inputs) {
+            for (long messageId : input.deletedIds()) {
+                ids.add(messageId);
+            }
+            for (long messageId : input.replacedIds()) {
+                ids.add(messageId);
+            }
+        }
+        ids.removeIf(messageId -> {
+            Long liveSeq = liveCopies.get(messageId);
+            return liveSeq == null || (liveSeq < 0) != deleted
+                    || Math.abs(liveSeq) < firstSeq || Math.abs(liveSeq) > lastSeq;
+        });
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void writeMerged(Path path, List<SearchSegment> inputs, long seq, long[] deleted, long[] replaced)
+            throws IOException {
+        PriorityQueue<MergeCursor> cursors = new PriorityQueue<>(
+                (a, b) -> SearchSegment.compareKeys(a.chatroomId, a.term, b.chatroomId, b.term));
+        for (SearchSegment segment : inputs) {
+            MergeCursor cursor = new MergeCursor(segment);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        try (SearchSegment.Writer writer = new SearchSegment.Writer(path, seq)) {
+            List<MergeCursor> same = new ArrayList<>();
+            while (!cursors.isEmpty()) {
+                MergeCursor first = cursors.poll();
+                same.add(first);
+                while (!cursors.isEmpty()
+                        && SearchSegment.compareKeys(cursors.peek().chatroomId, cursors.peek().term, first.chatroomId, first.term) == 0) {
+                    same.add(cursors.poll());
+                }
+
+                // Edits re-index old IDs in newer segments, so postings are re-sorted rather than concatenated
+                TreeMap<Long, Integer> postings = new TreeMap<>();
+                for (MergeCursor cursor : same) {
+                    cursor.segment.forEachPosting(cursor.entry, (messageId, frequency) -> {
+                        if (isLive(messageId, cursor.segment.seq())) {
+                            postings.put(messageId, frequency);
+                        }
+                    });
+                }
+                if (!postings.isEmpty()) {
+                    writePostings(writer, first.chatroomId, first.term, postings);
+                }
+                for (MergeCursor cursor : same) {
+                    if (cursor.advance()) {
+                        cursors.add(cursor);
+                    }
+                }
+                same.clear();
+            }
+            writer.finish(deleted, replaced);
+        }
+    }
+
+    // Writes and opens a segment file, removing it if either fails: the file number is already taken,
+    // and unlisted files are otherwise only cleaned up on the next start
+    private SearchSegment writeSegment(Path path, SegmentWrite write) throws IOException {
+        try {
+            write.run();
+            return SearchSegment.open(path);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+    }
+
+    private static void writePostings(SearchSegment.Writer writer, long chatroomId, byte[] term,
+                                      TreeMap<Long, Integer> postings) throws IOException {
+        long[] messageIds = new long[postings.size()];
+        int[] frequencies = new int[postings.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> posting : postings.entrySet()) {
+            messageIds[i] = posting.getKey();
+            frequencies[i++] = posting.getValue();
+        }
+        writer.add(chatroomId, term, messageIds, frequencies, i);
+    }
+
+    // Called with the write lock held
+    private void writeManifest() throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("messageWatermark", Long.toString(flushedMessageWatermark));
+        manifest.setProperty("changeWatermark", Long.toString(flushedChangeWatermark));
+        manifest.setProperty("nextSeq", Long.toString(nextSeq));
+        manifest.setProperty("nextFile", Long.toString(nextFile.get()));
+        manifest.setProperty("segments", String.join(",", segments.stream().map(SearchSegment::fileName).toList()));
+
+        // Replaced atomically: a crash leaves either the old or the new manifest, never half of one
+        Path temporary = directory.resolve(MANIFEST_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            manifest.store(out, "Embedded search index");
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Properties readManifest() throws IOException {
+        Path path = directory.resolve(MANIFEST_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            manifest.load(in);
+        }
+        return manifest;
+    }
+
+    // Segments written before a crash but never listed in a manifest, or left behind by a merge
+    private void deleteUnlisted(List<SearchSegment> listed) throws IOException {
+        Set<String> keep = new HashSet<>();
+        for (SearchSegment segment : listed) {
+            keep.add(segment.fileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                if (!keep.contains(file.getFileName().toString())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SegmentWrite {
+
+        void run() throws IOException;
+    }
+
+    private static String segmentFileName(long fileNumber) {
+        return SEGMENT_PREFIX + String.format("%010d", fileNumber) + SEGMENT_SUFFIX;
+    }
+
+    private static class MergeCursor {
+
+        private final SearchSegment segment;
+        private int entry = -1;
+        private long chatroomId;
+        private byte[] term;
+
+        private MergeCursor(SearchSegment segment) {
+            this.segment = segment;
+        }
+
+        private boolean advance() {
+            if (++entry >= segment.termCount()) {
+                return false;
+            }
+            chatroomId = segment.chatroomIdAt(entry);
+            term = segment.termAt(entry);
+            return true;
+        }
+    }
+
+    /**
+     * Messages indexed since the last flush. Mutated by the tail thread under the write
+     * lock and read by searches under the read lock; it only holds live copies.
+     */
+    private static class Buffer {
+
+        private final long seq;
+        private final TreeMap<TermKey, TreeMap<Long, Integer>> postings = new TreeMap<>();
+        private final Map<Long, List<TermKey>> documents = new HashMap<>();
+        private final Set<Long> deleted = new TreeSet<>();
+        private final Set<Long> replaced = new TreeSet<>();
+
+        private Buffer(long seq) {
+            this.seq = seq;
+        }
+
+        private int size() {
+            return documents.size() + deleted.size();
+        }
+
+        private boolean isEmpty() {
+            return documents.isEmpty() && deleted.isEmpty() && replaced.isEmpty();
+        }
+
+        private void add(long messageId, long chatroomId, String content) {
+            remove(messageId);
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String word : SearchTokenizer.words(content)) {
+                frequencies.merge(word, 1, Integer::sum);
+            }
+            List<TermKey> keys = new ArrayList<>(frequencies.size());
+            frequencies.forEach((word, frequency) -> {
+                TermKey key = new TermKey(chatroomId, word.getBytes(StandardCharsets.UTF_8));
+                postings.computeIfAbsent(key, k -> new TreeMap<>()).put(messageId, frequency);
+                keys.add(key);
+            });
+            documents.put(messageId, keys);
+        }
+
+        private void remove(long messageId) {
+            List<TermKey> keys = documents.remove(messageId);
+            if (keys == null) {
+                return;
+            }
+            for (TermKey key : keys) {
+                TreeMap<Long, Integer> termPostings = postings.get(key);
+                termPostings.remove(messageId);
+                if (termPostings.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+
+        private void collect(long chatroomId, byte[] prefix, Set<Long> candidates, Map<Long, Integer> matches) {
+            for (Map.Entry<TermKey, TreeMap<Long, Integer>> entry : postings.tailMap(new TermKey(chatroomId, prefix)).entrySet()) {
+                if (!entry.getKey().startsWith(chatroomId, prefix)) {
+                    break;
+                }
+                entry.getValue().forEach((messageId, frequency) -> {
+                    if (candidates == null || candidates.contains(messageId)) {
+                        matches.merge(messageId, frequency, Integer::sum);
+                    }
+                });
+            }
+        }
+
+        private void writeTo(Path path) throws IOException {
+            try (SearchSegment.Writer writer = new SearchSegment.Writer(path, seq)) {
+                for (Map.Entry<TermKey, TreeMap<Long, Integer>> entry : postings.entrySet()) {
+                    writePostings(writer, entry.getKey().chatroomId, entry.getKey().term, entry.getValue());
+                }
+                writer.finish(toArray(deleted), toArray(replaced));
+            }
+        }
+
+        private static long[] toArray(Set<Long> ids) {
+            return ids.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    private static class TermKey implements Comparable<TermKey> {
+
+        private final long chatroomId;
+        private final byte[] term;
+
+        private TermKey(long chatroomId, byte[] term) {
+            this.chatroomId = chatroomId;
+            this.term = term;
+        }
+
+        private boolean startsWith(long chatroomId, byte[] prefix) {
+            return this.chatroomId == chatroomId && term.length >= prefix.length
+                    && Arrays.equals(term, 0, prefix.length, prefix, 0, prefix.length);
+        }
+
+        @Override
+        public int compareTo(TermKey other) {
+            return SearchSegment.compareKeys(chatroomId, term, other.chatroomId, other.term);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.whatsapp.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serialized history pages older than a cursor, kept as the exact response bytes (JSON or
+ * binary, optionally gzipped) so repeated scrolls through old history skip the query and
+ * the serialization. New messages never change such a page; edits, deletes and sender
+ * profile changes do, so each page remembers the room's persisted version (its content
+ * version plus the participants' profile versions) it was built at and is dropped once that
+ * version moves on, whichever instance moved it. Pages
+ * also expire after a TTL, and are evicted least-recently-used over a byte budget.
+ */
+@Component
+public class HistoryPageCache {
+
+    // Rough per-entry overhead of the map node, key and page objects
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    @Autowired
+    private ChangeVersions changeVersions;
+
+    @Value("${app.messages.page-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    @Value("${app.messages.page-cache.ttl-ms:60000}")
+    private long ttlMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Read once per request, before the lookup and before running the request that fills the
+    // page; -1 when the chatroom does not exist
+    public long version(long chatroomId) {
+        return changeVersions.chatroomContentVersion(chatroomId);
+    }
+
+    public Page get(Key key, long version) {
+        Page page;
+        lock.lock();
+        try {
+            page = pages.get(key);
+            if (page != null && (page.version() != version || expired(page))) {
+                pages.remove(key);
+                usedBytes -= size(key, page);
+                invalidations.increment();
+                page = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        (page != null ? hits : misses).increment();
+        return page;
+    }
+
+    public void put(Key key, Page page) {
+        long bytes = size(key, page);
+        // A single oversized page would push out everything else
+        if (page.version() < 0 || bytes > maxBytes / 16) {
+            return;
+        }
+        // A page built at a version that has since moved is stored as is; the next get compares
+        // the version it read with page.version() and drops it, so no version is read here
+        lock.lock();
+        try {
+            Page previous = pages.get(key);
+            if (previous != null && previous.version() > page.version()) {
+                return;
+            }
+            pages.put(key, page);
+            if (previous != null) {
+                usedBytes -= size(key, previous);
+            }
+            usedBytes += bytes;
+            Iterator<Map.Entry<Key, Page>> coldest = pages.entrySet().iterator();
+            while (usedBytes > maxBytes && coldest.hasNext()) {
+                Map.Entry<Key, Page> entry = coldest.next();
+                usedBytes -= size(entry.getKey(), entry.getValue());
+                coldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", lookups - hitCount);
+        stats.put("hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("invalidations", invalidations.sum());
+        stats.put("evictions", evictions.sum());
+        lock.lock();
+        try {
+            stats.put("pages", pages.size());
+            stats.put("usedBytes", usedBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    private boolean expired(Page page) {
+        return System.currentTimeMillis() - page.createdAt() > ttlMs;
+    }
+
+    private static long size(Key key, Page page) {
+        return ENTRY_OVERHEAD_BYTES + page.body().length + (key.accept() != null ? key.accept().length() : 0);
+    }
+
+    // accept is the raw Accept header, so two requests only share a page when they negotiate alike
+    public record Key(long chatroomId, long before, int limit, String accept, boolean gzip) {
+    }
+
+    public record Page(long version, long createdAt, byte[] body, String contentType, String etag, boolean gzipped) {
+    }
+}
@@ -9,6 +9,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 @ConditionalOnProperty(name = "spring.kafka.bootstrap-servers", havingValue = "false", matchIfMissing = true)
 public class KafkaServiceFallbackImpl implements KafkaService {
@@ -32,4 +34,17 @@ public class KafkaServiceFallbackImpl implements KafkaService {
         logger.info("Kafka not configured, logging notification event: {} for user: {}", 
                    event.getEventType(), event.getRecipientUsername());
     }
-} 
\ No newline at end of file
+
+    // Nothing to deliver to, so the event counts as handled once logged
+    @Override
+    public CompletableFuture<?> sendMessageEvent(MessageEvent event) {
+        publishMessageEvent(event);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<?> sendNotificationEvent(NotificationEvent event) {
+        publishNotificationEvent(event);
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -13,6 +13,8 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 @ConditionalOnProperty(name = "spring.kafka.bootstrap-servers")
 public class KafkaServiceImpl implements KafkaService {
@@ -74,4 +76,22 @@ public class KafkaServiceImpl implements KafkaService {
             logger.warn("Kafka not available, skipping notification event: {}", event.getEventType());
         }
     }
-} 
\ No newline at end of file
+
+    @Override
+    public CompletableFuture<?> sendMessageEvent(MessageEvent event) {
+        return send(messageEventsTopic, event.getEventType(), event);
+    }
+
+    @Override
+    public CompletableFuture<?> sendNotificationEvent(NotificationEvent event) {
+        return send(notificationEventsTopic, event.getEventType(), event);
+    }
+
+    private CompletableFuture<?> send(String topic, String key, Object event) {
+        try {
+            return kafkaTemplate.send(topic, key, objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
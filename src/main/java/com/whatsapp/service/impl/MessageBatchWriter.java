@@ -0,0 +1,369 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageEvent;
+import com.whatsapp.dto.NotificationEvent;
+import com.whatsapp.dto.UserDto;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.Message;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.OutboxService;
+import com.whatsapp.util.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Persists a batch of text messages in a single transaction. Validation failures are
+ * reported per item; the rest of the batch is still written.
+ */
+@Service
+public class MessageBatchWriter {
+
+    private static final int MAX_CLIENT_KEY_LENGTH = 64;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private ChatroomActivityTracker chatroomActivityTracker;
+
+    @Autowired
+    private MessageDedupeCache messageDedupeCache;
+
+    @Autowired
+    private ChatroomMembershipCache chatroomMembershipCache;
+
+    @Autowired
+    private RecentMessagesCache recentMessagesCache;
+
+    @Autowired
+    private ChangeVersions changeVersions;
+
+    @Autowired
+    private MessageChangeLog messageChangeLog;
+
+    @Value("${app.sync.commit-grace-ms:5000}")
+    private long commitGraceMs;
+
+    @Transactional
+    public List<WriteResult> writeTextMessages(List<TextMessageCommand> commands) {
+        return writeTextMessages(commands, false);
+    }
+
+    // checkStoredKeys also looks client keys up in the database, used when retrying after a unique key violation
+    @Transactional
+    public List<WriteResult> writeTextMessages(List<TextMessageCommand> commands, boolean checkStoredKeys) {
+        int count = commands.size();
+        Message[] messages = new Message[count];
+        MessageDto[] originals = new MessageDto[count];
+        RuntimeException[] errors = new RuntimeException[count];
+        int[] sameAs = new int[count];
+        long[] recipientIds = new long[count];
+        Map<String, Integer> keyedInBatch = new HashMap<>();
+        Set<Long> userIds = new HashSet<>();
+
+        // Authorize every command from the membership cache; no chatroom or user is loaded for this
+        for (int i = 0; i < count; i++) {
+            TextMessageCommand command = commands.get(i);
+            sameAs[i] = -1;
+            try {
+                String clientKey = command.getClientKey();
+                if (clientKey != null) {
+                    validateClientKey(clientKey);
+
+                    // A retried send returns the original message without writing anything
+                    Optional<MessageDto> original = findOriginal(command.getSenderId(), clientKey, checkStoredKeys);
+                    if (original.isPresent()) {
+                        originals[i] = original.get();
+                        continue;
+                    }
+                    Integer first = keyedInBatch.putIfAbsent(command.getSenderId() + ":" + clientKey, i);
+                    if (first != null) {
+                        sameAs[i] = first;
+                        continue;
+                    }
+                }
+
+                chatroomMembershipCache.checkMember(command.getChatroomId(), command.getSenderId());
+                recipientIds[i] = chatroomMembershipCache.getOtherParticipant(command.getChatroomId(), command.getSenderId());
+                userIds.add(command.getSenderId());
+                userIds.add(recipientIds[i]);
+            } catch (RuntimeException e) {
+                errors[i] = e;
+            }
+        }
+
+        // Senders and recipients for the whole batch in one query
+        Map<Long, User> users = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            userRepository.findAllById(userIds).forEach(user -> users.put(user.getId(), user));
+        }
+
+        List<Message> toSave = new ArrayList<>();
+        Map<Message, User> recipients = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (errors[i] != null || originals[i] != null || sameAs[i] >= 0) {
+                continue;
+            }
+            TextMessageCommand command = commands.get(i);
+            User sender = users.get(command.getSenderId());
+            User recipient = users.get(recipientIds[i]);
+            if (sender == null || recipient == null) {
+                errors[i] = new RuntimeException("User not found with id: " + (sender == null ? command.getSenderId() : recipientIds[i]));
+                continue;
+            }
+
+            Chatroom chatroom = chatroomRepository.getReferenceById(command.getChatroomId());
+            messages[i] = new Message(command.getContent(), Message.MessageType.TEXT, sender, chatroom);
+            messages[i].setClientKey(command.getClientKey());
+            messages[i].setReservedId(command.getReservedId());
+            toSave.add(messages[i]);
+            recipients.put(messages[i], recipient);
+        }
+        for (int i = 0; i < count; i++) {
+            if (sameAs[i] >= 0) {
+                messages[i] = messages[sameAs[i]];
+                originals[i] = originals[sameAs[i]];
+                errors[i] = errors[sameAs[i]];
+            }
+        }
+
+        if (toSave.isEmpty()) {
+            return buildResults(messages, originals, errors);
+        }
+
+        messageRepository.saveAll(toSave);
+
+        // A reserved ID whose insert was retried past the commit grace period is below the watermarks
+        // readers may already hold; the change log hands it to them under a fresh ID. Half the grace
+        // period leaves room for this transaction's own commit.
+        long lateBelow = SnowflakeIdGenerator.minIdAt(Instant.now().minusMillis(commitGraceMs / 2));
+        for (Message message : toSave) {
+            if (message.getReservedId() != null && message.getId() < lateBelow) {
+                messageChangeLog.recordLateCreation(message);
+            }
+        }
+
+        // Chatroom timestamps, previews and unread counts are coalesced and written behind by the activity tracker
+        LocalDateTime now = LocalDateTime.now();
+        for (Message message : toSave) {
+            Long chatroomId = message.getChatroom().getId();
+            long user1Id = chatroomMembershipCache.getUser1Id(chatroomId);
+            long user2Id = chatroomMembershipCache.getUser2Id(chatroomId);
+            chatroomActivityTracker.recordMessage(chatroomId, user1Id, user2Id,
+                    message.getId(), message.getSender().getId(), message.getContent(), now);
+        }
+
+        for (Message message : toSave) {
+            publishMessageEvent(message, "MESSAGE_SENT");
+            sendMessageNotifications(message, recipients.get(message));
+        }
+
+        List<WriteResult> results = buildResults(messages, originals, errors);
+        for (int i = 0; i < count; i++) {
+            if (messages[i] != null && sameAs[i] < 0) {
+                recentMessagesCache.addAfterCommit(results.get(i).getMessage());
+            }
+        }
+        if (!keyedInBatch.isEmpty()) {
+            rememberClientKeysAfterCommit(messages, results);
+        }
+        return results;
+    }
+
+    private List<WriteResult> buildResults(Message[] messages, MessageDto[] originals, RuntimeException[] errors) {
+        List<WriteResult> results = new ArrayList<>(messages.length);
+        for (int i = 0; i < messages.length; i++) {
+            if (errors[i] != null) {
+                results.add(new WriteResult(null, errors[i]));
+            } else if (originals[i] != null) {
+                results.add(new WriteResult(originals[i], null));
+            } else {
+                results.add(new WriteResult(convertToDto(messages[i]), null));
+            }
+        }
+        return results;
+    }
+
+    private Optional<MessageDto> findOriginal(Long senderId, String clientKey, boolean checkStoredKeys) {
+        Optional<MessageDto> cached = messageDedupeCache.get(senderId, clientKey);
+        if (cached.isPresent() || !checkStoredKeys) {
+            return cached;
+        }
+        return messageRepository.findBySenderIdAndClientKey(senderId, clientKey)
+                .map(this::convertToDto);
+    }
+
+    private void validateClientKey(String clientKey) {
+        if (clientKey.isBlank() || clientKey.length() > MAX_CLIENT_KEY_LENGTH) {
+            throw new RuntimeException("Client key must be between 1 and " + MAX_CLIENT_KEY_LENGTH + " characters");
+        }
+    }
+
+    private void rememberClientKeysAfterCommit(Message[] messages, List<WriteResult> results) {
+        // Only committed sends may answer retries, so the cache is filled after commit
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (int i = 0; i < messages.length; i++) {
+                    Message message = messages[i];
+                    if (message != null && message.getClientKey() != null) {
+                        messageDedupeCache.put(message.getSender().getId(), message.getClientKey(), results.get(i).getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    private void publishMessageEvent(Message message, String eventType) {
+        MessageEvent event = new MessageEvent();
+        event.setEventType(eventType);
+        event.setMessageId(message.getId());
+        event.setChatroomId(message.getChatroom().getId());
+        event.setSenderUsername(message.getSender().getUsername());
+        event.setContent(message.getContent());
+        event.setMessageType(message.getMessageType().toString());
+        event.setTimestamp(LocalDateTime.now());
+
+        outboxService.enqueueMessageEvent(event);
+    }
+
+    private void sendMessageNotifications(Message message, User recipient) {
+        User sender = message.getSender();
+
+        NotificationEvent notification = new NotificationEvent();
+        notification.setEventType("NEW_MESSAGE");
+        notification.setRecipientUsername(recipient.getUsername());
+        notification.setSenderUsername(sender.getUsername());
+        notification.setNotificationType("PUSH");
+        notification.setTitle("New message from " + sender.getUsername());
+        notification.setMessage(message.getContent().length() > 50 ?
+                             message.getContent().substring(0, 50) + "..." : message.getContent());
+        notification.setChatroomId(message.getChatroom().getId().toString());
+        notification.setMessageId(message.getId().toString());
+        notification.setTimestamp(LocalDateTime.now());
+
+        outboxService.enqueueNotificationEvent(notification);
+    }
+
+    private MessageDto convertToDto(Message message) {
+        MessageDto dto = new MessageDto(
+                message.getId(),
+                message.getContent(),
+                message.getMessageType(),
+                convertUserToDto(message.getSender()),
+                message.getChatroom().getId(),
+                message.getCreatedAt(),
+                message.getUpdatedAt()
+        );
+        return dto;
+    }
+
+    private UserDto convertUserToDto(User user) {
+        return new UserDto(
+                user.getId(),
+                user.getUsername(),
+                user.getBio(),
+                user.getAvatarUrl(),
+                user.getCreatedAt(),
+                user.getUpdatedAt()
+        );
+    }
+
+    public static class TextMessageCommand {
+
+        private final Long chatroomId;
+        private final Long senderId;
+        private final String content;
+        private final String clientKey;
+        private final Long reservedId;
+
+        public TextMessageCommand(Long chatroomId, Long senderId, String content, String clientKey) {
+            this(chatroomId, senderId, content, clientKey, null);
+        }
+
+        public TextMessageCommand(Long chatroomId, Long senderId, String content, String clientKey, Long reservedId) {
+            this.chatroomId = chatroomId;
+            this.senderId = senderId;
+            this.content = content;
+            this.clientKey = clientKey;
+            this.reservedId = reservedId;
+        }
+
+        public Long getChatroomId() {
+            return chatroomId;
+        }
+
+        public Long getSenderId() {
+            return senderId;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public String getClientKey() {
+            return clientKey;
+        }
+
+        public Long getReservedId() {
+            return reservedId;
+        }
+    }
+
+    public static class WriteResult {
+
+        private final MessageDto message;
+        private final RuntimeException error;
+
+        public WriteResult(MessageDto message, RuntimeException error) {
+            this.message = message;
+            this.error = error;
+        }
+
+        public MessageDto getMessage() {
+            return message;
+        }
+
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public MessageDto getOrThrow() {
+            if (error != null) {
+                throw error;
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.model.Message;
+import com.whatsapp.model.MessageChange;
+import com.whatsapp.repository.MessageChangeRepository;
+import com.whatsapp.util.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Records message edits and deletions in the edit's own transaction so delta sync can
+ * replay them, along with messages persisted too late for readers that walk by message ID. Entries older than the retention window are purged; a client whose
+ * watermark is older than that has to reload history instead of syncing.
+ */
+@Component
+public class MessageChangeLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageChangeLog.class);
+
+    @Autowired
+    private MessageChangeRepository messageChangeRepository;
+
+    @Value("${app.sync.change-retention-days:30}")
+    private int retentionDays;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordEdit(Message message) {
+        messageChangeRepository.save(new MessageChange(
+                message.getId(), message.getChatroom().getId(), MessageChange.ChangeType.EDITED, message.getContent()));
+    }
+
+    // A message ID reserved long before its insert may already be behind sync watermarks and the search index
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordLateCreation(Message message) {
+        messageChangeRepository.save(new MessageChange(
+                message.getId(), message.getChatroom().getId(), MessageChange.ChangeType.CREATED, message.getContent()));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDeletion(Message message) {
+        messageChangeRepository.save(new MessageChange(
+                message.getId(), message.getChatroom().getId(), MessageChange.ChangeType.DELETED, null));
+    }
+
+    // Oldest watermark for which the log is still complete
+    public long retentionFloor() {
+        return SnowflakeIdGenerator.minIdAt(Instant.now().minus(Duration.ofDays(retentionDays)));
+    }
+
+    @Scheduled(fixedDelayString = "${app.sync.change-purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = messageChangeRepository.deleteOlderThan(retentionFloor());
+        if (purged > 0) {
+            logger.info("Purged {} expired message changes", purged);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.util.BackgroundTaskRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recounts chatroom message counts to repair drift in the write-behind counters (deltas
+ * lost in a crash before their flush). Chatrooms are walked in ID-ordered chunks, several
+ * chunks in parallel; only rooms whose stored count is wrong are written.
+ */
+@Component
+public class MessageCountRepairJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageCountRepairJob.class);
+
+    private static final String RECOUNT_SQL =
+            "UPDATE chatrooms c SET message_count = r.actual " +
+            "FROM (SELECT k.id, (SELECT COUNT(*) FROM messages m WHERE m.chatroom_id = k.id) AS actual " +
+            "FROM chatrooms k WHERE k.id BETWEEN ? AND ?) r " +
+            "WHERE c.id = r.id AND c.message_count <> r.actual RETURNING c.id";
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChatroomCounters chatroomCounters;
+
+    @Autowired
+    private BackgroundTaskRunner backgroundTaskRunner;
+
+    @Value("${app.chatroom.message-count.repair-chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.chatroom.message-count.repair-parallelism:4}")
+    private int parallelism;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private long cursor;
+
+    // Only hands the run off: the scheduler's single thread also drives the flushers and relays
+    @Scheduled(cron = "${app.chatroom.message-count.repair-cron:0 0 4 * * *}")
+    public void repair() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            backgroundTaskRunner.start("message-count-repair", () -> {
+                try {
+                    runRepair();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void runRepair() throws InterruptedException {
+        cursor = 0;
+        AtomicLong corrected = new AtomicLong();
+        List<Future<?>> workers = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(backgroundTaskRunner.start("message-count-repair-" + i, () -> {
+                long[] range;
+                while ((range = nextChunk()) != null) {
+                    long[] chunk = range;
+                    List<Long> ids = chatroomCounters.recount(chunk[0], chunk[1], (fromId, toId) ->
+                            jdbcTemplate.queryForList(RECOUNT_SQL, Long.class, fromId, toId));
+                    corrected.addAndGet(ids.size());
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                logger.error("Message count repair worker failed: {}", e.getCause().getMessage());
+            }
+        }
+        logger.info("Message count repair finished, {} chatrooms corrected", corrected.get());
+    }
+
+    // Returns the first and last chatroom ID of the next chunk, or null when all were handed out
+    private synchronized long[] nextChunk() {
+        List<Long> ids = chatroomRepository.findIdsAfter(cursor, PageRequest.of(0, chunkSize));
+        if (ids.isEmpty()) {
+            return null;
+        }
+        cursor = ids.get(ids.size() - 1);
+        return new long[]{ids.get(0), cursor};
+    }
+}
@@ -0,0 +1,88 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, time-expiring cache of recently sent messages keyed by sender and client key.
+ * Lets a retried send return the original message without touching the database; the
+ * unique (sender_id, client_key) constraint remains the durable backstop.
+ */
+@Component
+public class MessageDedupeCache {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    @Value("${app.messages.dedupe.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${app.messages.dedupe.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    public Optional<MessageDto> get(Long senderId, String clientKey) {
+        String key = key(senderId, clientKey);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key, entry);
+            return Optional.empty();
+        }
+        return Optional.of(entry.message);
+    }
+
+    public void put(Long senderId, String clientKey, MessageDto message) {
+        String key = key(senderId, clientKey);
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+        if (entries.put(key, new Entry(message, expiresAt)) == null) {
+            insertionOrder.add(key);
+        }
+        evict();
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+        insertionOrder.removeIf(key -> !entries.containsKey(key));
+    }
+
+    private void evict() {
+        // Oldest entries go first: they are the closest to expiring anyway
+        while (entries.size() > maxEntries) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldest);
+        }
+    }
+
+    private static String key(Long senderId, String clientKey) {
+        return senderId + ":" + clientKey;
+    }
+
+    private static class Entry {
+
+        private final MessageDto message;
+        private final long expiresAt;
+
+        private Entry(MessageDto message, long expiresAt) {
+            this.message = message;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.util.BackgroundTaskRunner;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group-commit mode for text sends: callers enqueue their message and block until the
+ * batch it was flushed with has committed. A batch is flushed once it reaches
+ * {@code max-batch-size} or {@code max-delay-ms} after its first message arrived.
+ */
+@Component
+public class MessageGroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageGroupCommitter.class);
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Value("${app.messages.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.messages.group-commit.max-batch-size:64}")
+    private int maxBatchSize;
+
+    @Value("${app.messages.group-commit.max-delay-ms:5}")
+    private long maxDelayMs;
+
+    @Value("${app.messages.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.messages.group-commit.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Autowired
+    private BackgroundTaskRunner backgroundTaskRunner;
+
+    private BlockingQueue<PendingSend> queue;
+    private Future<?> flusher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = backgroundTaskRunner.start("message-group-commit", this::flushLoop);
+        logger.info("Message group commit enabled (max batch size: {}, max delay: {} ms)", maxBatchSize, maxDelayMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Message group commit did not stop cleanly: {}", e.getMessage());
+        }
+        // Sends queued after the flusher's last poll would otherwise wait for their timeout
+        List<PendingSend> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(pending -> pending.future.completeExceptionally(
+                new RuntimeException("Message send was not committed: shutting down")));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public MessageDto send(MessageBatchWriter.TextMessageCommand command) {
+        PendingSend pending = new PendingSend(command);
+        if (!running || !queue.offer(pending)) {
+            throw new RuntimeException("Message send queue is full, please retry");
+        }
+        // Stopped between the check and the offer: the flusher may already be gone
+        if (!running && queue.remove(pending)) {
+            throw new RuntimeException("Message send was not committed: shutting down");
+        }
+        try {
+            return pending.future.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            // The batch may still commit; a retry with the same client key returns that message
+            throw new RuntimeException("Message send timed out after " + sendTimeoutMs + " ms, please retry");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the message send to commit");
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingSend> batch = new ArrayList<>(maxBatchSize);
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSend first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep collecting until the batch is full or the first message's deadline passes
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingSend next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in message group commit loop", e);
+            } finally {
+                batch.forEach(pending -> pending.future.completeExceptionally(
+                        new RuntimeException("Message send was not committed")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingSend> batch) {
+        try {
+            complete(batch, messageBatchWriter.writeTextMessages(commandsOf(batch)));
+        } catch (RuntimeException e) {
+            // Retry one by one so a single bad row does not fail the rest of the batch;
+            // a retry also resolves client keys that hit the unique constraint
+            logger.warn("Group commit of {} messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (PendingSend pending : batch) {
+                try {
+                    complete(List.of(pending), messageBatchWriter.writeTextMessages(List.of(pending.command), true));
+                } catch (RuntimeException single) {
+                    pending.future.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private void complete(List<PendingSend> batch, List<MessageBatchWriter.WriteResult> results) {
+        for (int i = 0; i < batch.size(); i++) {
+            MessageBatchWriter.WriteResult result = results.get(i);
+            if (result.isSuccess()) {
+                batch.get(i).future.complete(result.getMessage());
+            } else {
+                batch.get(i).future.completeExceptionally(result.getError());
+            }
+        }
+    }
+
+    private List<MessageBatchWriter.TextMessageCommand> commandsOf(List<PendingSend> batch) {
+        List<MessageBatchWriter.TextMessageCommand> commands = new ArrayList<>(batch.size());
+        for (PendingSend pending : batch) {
+            commands.add(pending.command);
+        }
+        return commands;
+    }
+
+    private static class PendingSend {
+
+        private final MessageBatchWriter.TextMessageCommand command;
+        private final CompletableFuture<MessageDto> future = new CompletableFuture<>();
+
+        private PendingSend(MessageBatchWriter.TextMessageCommand command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+package com.whatsapp.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.dto.NotificationEvent;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.OutboxService;
+import com.whatsapp.util.BackgroundTaskRunner;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accept-then-persist pipeline for asynchronous sends. Accepted messages are appended to a
+ * local journal (fsynced before the client gets its 202) and drained into the database in
+ * batches by a pool of persistence workers.
+ *
+ * <p>The journal is a series of segments; appends go to the newest, which is rotated once
+ * it reaches {@code segment-bytes}. An older segment is deleted once every message in it is
+ * settled, so the journal stays bounded under steady load. A message is settled when it is
+ * persisted or rejected: a message that fails to persist (a database outage) is retried
+ * with backoff for as long as it takes and stays in its segment meanwhile; one the writer
+ * rejects (sender no longer a member, user deleted) can never succeed, so it is parked in
+ * a dead-letter file and its sender notified. Concurrent appends share one fsync. Segments
+ * left on disk are replayed on startup, skipping messages already in the database.
+ */
+@Component
+public class MessageIngestQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIngestQueue.class);
+
+    private static final String SEGMENT_PREFIX = "ingest-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.messages.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.messages.async.journal-dir:./data/ingest/}")
+    private String journalDir;
+
+    @Value("${app.messages.async.workers:2}")
+    private int workerCount;
+
+    @Value("${app.messages.async.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.messages.async.segment-bytes:4194304}")
+    private long segmentBytes;
+
+    @Value("${app.messages.async.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    @Value("${app.messages.async.max-retry-backoff-ms:30000}")
+    private long maxRetryBackoffMs;
+
+    @Autowired
+    private BackgroundTaskRunner backgroundTaskRunner;
+
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final DelayQueue<Retry> retries = new DelayQueue<>();
+    private final List<Future<?>> workers = new ArrayList<>();
+
+    // Guards the segments and their counters. Locks rather than synchronized, so virtual
+    // threads do not pin their carrier during file I/O
+    private final ReentrantLock journalLock = new ReentrantLock();
+    // Held by the thread forcing the journal; the others wait here and usually find their write already covered
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // Sender and client key -> ID of each journaled message not yet settled, so a retry gets the same ID
+    private final ConcurrentHashMap<String, Long> pendingKeys = new ConcurrentHashMap<>();
+    private Segment current;
+    private long writtenCount;
+    private volatile long syncedCount;
+
+    private Path directory;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(journalDir);
+        Files.createDirectories(directory);
+
+        long nextSegment = 1;
+        for (Map.Entry<Long, Path> file : journalFiles().entrySet()) {
+            List<Record> unpersisted = readSegment(file.getValue());
+            nextSegment = Math.max(nextSegment, file.getKey() + 1);
+            if (unpersisted.isEmpty()) {
+                Files.delete(file.getValue());
+                continue;
+            }
+            logger.info("Replaying {} journaled messages from {}", unpersisted.size(), file.getValue().getFileName());
+            Segment segment = new Segment(file.getKey(), file.getValue(),
+                    FileChannel.open(file.getValue(), StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            segment.appended = unpersisted.size();
+            segments.put(segment.number, segment);
+            for (Record record : unpersisted) {
+                record.setSegment(segment.number);
+                if (record.getClientKey() != null) {
+                    pendingKeys.putIfAbsent(pendingKey(record.getSenderId(), record.getClientKey()), record.getId());
+                }
+                queue.add(record);
+            }
+        }
+        current = openSegment(nextSegment);
+
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(backgroundTaskRunner.start("message-ingest-" + i, this::drainLoop));
+        }
+        logger.info("Asynchronous message sends enabled with {} persistence workers", workerCount);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Future<?> worker : workers) {
+            try {
+                worker.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("Message ingest worker did not stop cleanly: {}", e.getMessage());
+            }
+        }
+        // Anything still queued or waiting for a retry stays in the journal and is replayed on the next start
+        journalLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The ID of an accepted message with this client key that is not persisted yet
+    public Optional<Long> pendingId(Long senderId, String clientKey) {
+        return Optional.ofNullable(pendingKeys.get(pendingKey(senderId, clientKey)));
+    }
+
+    // Returns the ID the message is stored under: a concurrent send with the same client key
+    // that was accepted first wins, and nothing is journaled for this one
+    public long append(Record record) {
+        if (!running) {
+            throw new RuntimeException("Asynchronous sends are not available");
+        }
+        if (record.getClientKey() != null) {
+            Long pending = pendingKeys.putIfAbsent(pendingKey(record.getSenderId(), record.getClientKey()), record.getId());
+            if (pending != null) {
+                return pending;
+            }
+        }
+        ByteBuffer line;
+        try {
+            line = ByteBuffer.wrap((objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            releaseKey(record);
+            throw new RuntimeException("Failed to journal message: " + e.getMessage());
+        }
+        long written;
+        journalLock.lock();
+        try {
+            if (current.size >= segmentBytes) {
+                rotate();
+            }
+            write(current, line);
+            current.appended++;
+            record.setSegment(current.number);
+            written = ++writtenCount;
+        } catch (IOException e) {
+            releaseKey(record);
+            throw new RuntimeException("Failed to journal message: " + e.getMessage());
+        } finally {
+            journalLock.unlock();
+        }
+        try {
+            sync(written);
+        } catch (IOException e) {
+            // The client is told the send failed, so the message is not persisted either
+            markSettled(List.of(record));
+            throw new RuntimeException("Failed to journal message: " + e.getMessage());
+        }
+        queue.add(record);
+        return record.getId();
+    }
+
+    // Caller holds journalLock
+    private void write(Segment segment, ByteBuffer line) throws IOException {
+        int length = line.remaining();
+        try {
+            while (line.hasRemaining()) {
+                segment.channel.write(line);
+            }
+        } catch (IOException e) {
+            // Drop the partial line so the next append does not run into it
+            segment.channel.truncate(segment.size);
+            throw e;
+        }
+        segment.size += length;
+    }
+
+    // Returns once everything up to the given write is on disk
+    private void sync(long written) throws IOException {
+        if (syncedCount >= written) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedCount >= written) {
+                return; // forced by the thread that held the lock
+            }
+            long target;
+            FileChannel channel;
+            journalLock.lock();
+            try {
+                target = writtenCount;
+                channel = current.channel;
+            } finally {
+                journalLock.unlock();
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Rotated out and settled in the meantime; rotation forced it in full
+            }
+            syncedCount = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Caller holds journalLock
+    private void rotate() throws IOException {
+        // Everything written to the old segment is durable before appends move on, so a sync
+        // that only forces the newest segment covers earlier writes too
+        current.channel.force(false);
+        Segment previous = current;
+        current = openSegment(previous.number + 1);
+        deleteIfSettled(previous);
+    }
+
+    private Segment openSegment(long number) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+        Segment segment = new Segment(number, path, FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        segment.size = segment.channel.size();
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private void drainLoop() {
+        List<Record> batch = new ArrayList<>(batchSize);
+        List<Retry> due = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                // Retries whose backoff has passed go first
+                retries.drainTo(due, batchSize);
+                due.forEach(retry -> batch.add(retry.record));
+                due.clear();
+                if (batch.isEmpty()) {
+                    Record first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Retried messages that did get persisted are recognized by their ID
+                logger.error("Unexpected error in message ingest loop", e);
+                batch.forEach(this::retryLater);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void persist(List<Record> batch) {
+        List<Record> settled = new ArrayList<>(batch.size());
+        Map<Record, String> rejected = new LinkedHashMap<>();
+        try {
+            collectRejected(batch, messageBatchWriter.writeTextMessages(commandsOf(batch)), rejected);
+            settled.addAll(batch);
+        } catch (RuntimeException e) {
+            logger.warn("Persisting {} accepted messages failed, retrying individually: {}", batch.size(), e.getMessage());
+            for (Record record : batch) {
+                try {
+                    collectRejected(List.of(record), messageBatchWriter.writeTextMessages(commandsOf(List.of(record)), true), rejected);
+                    settled.add(record);
+                } catch (RuntimeException single) {
+                    if (isPersisted(record)) {
+                        settled.add(record);
+                        continue;
+                    }
+                    // Likely a database outage: keep the message and try again after a backoff
+                    logger.warn("Persisting accepted message {} failed (attempt {}): {}",
+                            record.getId(), record.getAttempts() + 1, single.getMessage());
+                    retryLater(record);
+                }
+            }
+        }
+        if (!rejected.isEmpty()) {
+            try {
+                reject(rejected);
+            } catch (RuntimeException e) {
+                // Nothing was written for them, so they are rejected again on the retry
+                logger.error("Failed to park {} rejected messages: {}", rejected.size(), e.getMessage());
+                settled.removeAll(rejected.keySet());
+                rejected.keySet().forEach(this::retryLater);
+            }
+        }
+        markSettled(settled);
+    }
+
+    // A message inserted by an earlier attempt fails again on its primary key
+    private boolean isPersisted(Record record) {
+        try {
+            return messageRepository.existsById(record.getId());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void retryLater(Record record) {
+        record.setAttempts(record.getAttempts() + 1);
+        long backoff = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(record.getAttempts() - 1, 16));
+        retries.add(new Retry(record, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff)));
+    }
+
+    private void collectRejected(List<Record> records, List<MessageBatchWriter.WriteResult> results, Map<Record, String> rejected) {
+        for (int i = 0; i < records.size(); i++) {
+            if (!results.get(i).isSuccess()) {
+                rejected.put(records.get(i), results.get(i).getError().getMessage());
+            }
+        }
+    }
+
+    // Parks messages the writer refused in the dead-letter file and tells their senders
+    private void reject(Map<Record, String> rejected) {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<Record, String> entry : rejected.entrySet()) {
+            logger.warn("Accepted message {} was rejected, moving it to the dead-letter file: {}", entry.getKey().getId(), entry.getValue());
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("record", entry.getKey());
+            line.put("error", entry.getValue());
+            line.put("rejectedAt", LocalDateTime.now().toString());
+            try {
+                lines.append(objectMapper.writeValueAsString(line)).append('\n');
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to serialize rejected message: " + e.getMessage());
+            }
+        }
+        try (FileChannel deadLetters = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                deadLetters.write(buffer);
+            }
+            deadLetters.force(false);
+        } catch (IOException e) {
+            // Not settled, so they stay in the journal and are rejected again on the next attempt
+            throw new RuntimeException("Failed to write the dead-letter file: " + e.getMessage());
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> rejected.forEach((record, error) ->
+                    userRepository.findById(record.getSenderId()).ifPresent(sender ->
+                            outboxService.enqueueNotificationEvent(failureNotification(record, sender.getUsername(), error)))));
+        } catch (RuntimeException e) {
+            logger.error("Failed to notify senders of {} rejected messages: {}", rejected.size(), e.getMessage());
+        }
+    }
+
+    private NotificationEvent failureNotification(Record record, String senderUsername, String error) {
+        NotificationEvent notification = new NotificationEvent();
+        notification.setEventType("MESSAGE_FAILED");
+        notification.setRecipientUsername(senderUsername);
+        notification.setNotificationType("IN_APP");
+        notification.setTitle("Message not delivered");
+        notification.setMessage(error);
+        notification.setChatroomId(record.getChatroomId().toString());
+        notification.setMessageId(record.getId().toString());
+        notification.setTimestamp(LocalDateTime.now());
+        return notification;
+    }
+
+    private void markSettled(List<Record> settled) {
+        if (settled.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> perSegment = new HashMap<>();
+        for (Record record : settled) {
+            perSegment.merge(record.getSegment(), 1, Integer::sum);
+            // Persisted by now, so a retry finds it in the dedupe cache or the database
+            releaseKey(record);
+        }
+        journalLock.lock();
+        try {
+            perSegment.forEach((number, count) -> {
+                Segment segment = segments.get(number);
+                if (segment != null) {
+                    segment.settled += count;
+                    deleteIfSettled(segment);
+                }
+            });
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private void releaseKey(Record record) {
+        if (record.getClientKey() != null) {
+            pendingKeys.remove(pendingKey(record.getSenderId(), record.getClientKey()), record.getId());
+        }
+    }
+
+    private static String pendingKey(Long senderId, String clientKey) {
+        return senderId + ":" + clientKey;
+    }
+
+    // Caller holds journalLock; the segment being appended to is never deleted
+    private void deleteIfSettled(Segment segment) {
+        if (segment == current || segment.settled < segment.appended) {
+            return;
+        }
+        segments.remove(segment.number);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.error("Failed to delete settled journal segment {}: {}", segment.path.getFileName(), e.getMessage());
+        }
+    }
+
+    // Segment number -> file, oldest first
+    private TreeMap<Long, Path> journalFiles() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in the message journal directory: {}", name);
+                }
+            }
+        }
+        return files;
+    }
+
+    private List<Record> readSegment(Path path) throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                records.add(objectMapper.readValue(line, Record.class));
+            } catch (IOException e) {
+                // A torn last line from a crash mid-append was never acknowledged to the client
+                logger.warn("Skipping unreadable journal entry: {}", e.getMessage());
+            }
+        }
+        if (records.isEmpty()) {
+            return records;
+        }
+
+        Set<Long> persisted = new HashSet<>();
+        for (int from = 0; from < records.size(); from += 1000) {
+            List<Long> ids = records.subList(from, Math.min(from + 1000, records.size())).stream()
+                    .map(Record::getId)
+                    .toList();
+            persisted.addAll(messageRepository.findExistingIds(ids));
+        }
+        return records.stream()
+                .filter(record -> !persisted.contains(record.getId()))
+                .toList();
+    }
+
+    private List<MessageBatchWriter.TextMessageCommand> commandsOf(List<Record> records) {
+        List<MessageBatchWriter.TextMessageCommand> commands = new ArrayList<>(records.size());
+        for (Record record : records) {
+            commands.add(new MessageBatchWriter.TextMessageCommand(
+                    record.getChatroomId(), record.getSenderId(), record.getContent(), record.getClientKey(), record.getId()));
+        }
+        return commands;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Record {
+        private Long id;
+        private Long chatroomId;
+        private Long senderId;
+        private String content;
+        private String clientKey;
+
+        @JsonIgnore
+        private int attempts;
+
+        // Journal segment holding the record
+        @JsonIgnore
+        private long segment;
+
+        public Record(Long id, Long chatroomId, Long senderId, String content, String clientKey) {
+            this.id = id;
+            this.chatroomId = chatroomId;
+            this.senderId = senderId;
+            this.content = content;
+            this.clientKey = clientKey;
+        }
+    }
+
+    private static class Segment {
+
+        private final long number;
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private long appended;
+        private long settled;
+
+        private Segment(long number, Path path, FileChannel channel) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    private static class Retry implements Delayed {
+
+        private final Record record;
+        private final long dueNanos;
+
+        private Retry(Record record, long dueNanos) {
+            this.record = record;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Retry) other).dueNanos);
+        }
+    }
+}
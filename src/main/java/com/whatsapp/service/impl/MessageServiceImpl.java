@@ -1,39 +1,70 @@
 package com.whatsapp.service.impl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.dto.AcceptedMessageDto;
 import com.whatsapp.dto.AttachmentDto;
+import com.whatsapp.dto.BatchMessageRequest;
+import com.whatsapp.dto.BatchMessageResult;
+import com.whatsapp.dto.MessageChangeDto;
 import com.whatsapp.dto.MessageDto;
 import com.whatsapp.dto.MessageEvent;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.dto.MessageSearchResultDto;
+import com.whatsapp.dto.MessageView;
 import com.whatsapp.dto.NotificationEvent;
+import com.whatsapp.dto.SearchHit;
+import com.whatsapp.dto.SyncRequest;
+import com.whatsapp.dto.SyncResponse;
 import com.whatsapp.dto.UserDto;
 import com.whatsapp.model.Attachment;
 import com.whatsapp.model.Chatroom;
 import com.whatsapp.model.Message;
+import com.whatsapp.model.MessageChange;
 import com.whatsapp.model.User;
 import com.whatsapp.repository.AttachmentRepository;
 import com.whatsapp.repository.ChatroomRepository;
 import com.whatsapp.repository.MessageRepository;
 import com.whatsapp.repository.UserRepository;
-import com.whatsapp.service.KafkaService;
+import com.whatsapp.service.MessageSearchEngine;
 import com.whatsapp.service.MessageService;
+import com.whatsapp.service.OutboxService;
+import com.whatsapp.util.PayloadStats;
+import com.whatsapp.util.SearchTokenizer;
+import com.whatsapp.util.SnowflakeIdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -52,7 +83,67 @@ public class MessageServiceImpl implements MessageService {
     private AttachmentRepository attachmentRepository;
 
     @Autowired
-    private KafkaService kafkaService;
+    private OutboxService outboxService;
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired
+    private MessageGroupCommitter messageGroupCommitter;
+
+    @Autowired
+    private ChatroomActivityTracker chatroomActivityTracker;
+
+    @Autowired
+    private MessageDedupeCache messageDedupeCache;
+
+    @Autowired
+    private MessageIngestQueue messageIngestQueue;
+
+    @Autowired
+    private ChatroomMembershipCache chatroomMembershipCache;
+
+    @Autowired
+    private RecentMessagesCache recentMessagesCache;
+
+    @Autowired
+    private ChatroomCounters chatroomCounters;
+
+    @Autowired
+    private ChangeVersions changeVersions;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PayloadStats payloadStats;
+
+    @Autowired
+    private HistoryPageCache historyPageCache;
+
+    @Autowired
+    private MessageSearchEngine messageSearchEngine;
+
+    @Autowired
+    private MessageChangeLog messageChangeLog;
+
+    @Autowired
+    private MessageSyncReader messageSyncReader;
+
+    @Value("${app.messages.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${app.messages.history.max-limit:200}")
+    private int maxHistoryLimit;
+
+    @Value("${app.messages.search.max-limit:100}")
+    private int maxSearchLimit;
+
+    @Value("${app.sync.commit-grace-ms:5000}")
+    private long syncCommitGraceMs;
+
+    @Value("${app.messages.export.flush-every:500}")
+    private int exportFlushEvery;
 
     @Value("${app.file.picture-dir}")
     private String pictureDir;
@@ -61,25 +152,97 @@ public class MessageServiceImpl implements MessageService {
     private String videoDir;
 
     @Override
-    public MessageDto sendTextMessage(Long chatroomId, Long senderId, String content) {
-        // Validate chatroom and sender
-        Chatroom chatroom = validateChatroomAndSender(chatroomId, senderId);
-        User sender = userRepository.findById(senderId).get();
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public MessageDto sendTextMessage(Long chatroomId, Long senderId, String content, String clientKey) {
+        MessageBatchWriter.TextMessageCommand command =
+                new MessageBatchWriter.TextMessageCommand(chatroomId, senderId, content, clientKey);
+
+        // In group commit mode the send waits for its batch to commit
+        if (messageGroupCommitter.isEnabled()) {
+            return messageGroupCommitter.send(command);
+        }
 
-        // Create and save message
-        Message message = new Message(content, Message.MessageType.TEXT, sender, chatroom);
-        Message savedMessage = messageRepository.save(message);
-        
-        // Update chatroom's updatedAt timestamp
-        updateChatroomTimestamp(chatroom);
-        
-        // Publish message event to Kafka
-        publishMessageEvent(savedMessage, "MESSAGE_SENT");
-        
-        // Send notifications to other users in chatroom
-        sendMessageNotifications(savedMessage, chatroom, sender);
-        
-        return convertToDto(savedMessage);
+        try {
+            return messageBatchWriter.writeTextMessages(List.of(command)).get(0).getOrThrow();
+        } catch (DataIntegrityViolationException e) {
+            if (clientKey == null) {
+                throw e;
+            }
+            // A concurrent retry stored the same client key first; return that message
+            return messageBatchWriter.writeTextMessages(List.of(command), true).get(0).getOrThrow();
+        }
+    }
+
+    // No transaction: nothing may hold a connection while the journal is forced
+    @Override
+    public AcceptedMessageDto acceptTextMessage(Long chatroomId, Long senderId, String content, String clientKey) {
+        if (clientKey != null) {
+            // A retry gets the original ID: still journaled, recently sent, or stored long ago.
+            // The journal is asked first, as a message leaves it only once it is stored
+            Optional<Long> pending = messageIngestQueue.pendingId(senderId, clientKey);
+            if (pending.isPresent()) {
+                return new AcceptedMessageDto(pending.get(), chatroomId, senderId, clientKey, "ACCEPTED", LocalDateTime.now());
+            }
+            Optional<Long> original = messageDedupeCache.get(senderId, clientKey).map(MessageDto::getId)
+                    .or(() -> messageRepository.findIdBySenderIdAndClientKey(senderId, clientKey));
+            if (original.isPresent()) {
+                return new AcceptedMessageDto(original.get(), chatroomId, senderId, clientKey, "SENT", LocalDateTime.now());
+            }
+        }
+
+        chatroomMembershipCache.checkMember(chatroomId, senderId);
+
+        // The ID is final: the persistence worker inserts the message under it
+        long messageId = messageIngestQueue.append(new MessageIngestQueue.Record(
+                SnowflakeIdGenerator.shared().nextId(), chatroomId, senderId, content, clientKey));
+
+        return new AcceptedMessageDto(messageId, chatroomId, senderId, clientKey, "ACCEPTED", LocalDateTime.now());
+    }
+
+    @Override
+    public boolean isAsyncSendEnabled() {
+        return messageIngestQueue.isEnabled();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BatchMessageResult> sendTextMessages(List<BatchMessageRequest.Item> items) {
+        if (items.size() > maxBatchSize) {
+            throw new RuntimeException("Batch cannot contain more than " + maxBatchSize + " messages");
+        }
+
+        // Write in chatroom order so inserts and emitted events are grouped per room
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> items.get(i).getChatroomId()));
+
+        List<MessageBatchWriter.TextMessageCommand> commands = new ArrayList<>(items.size());
+        for (int index : order) {
+            BatchMessageRequest.Item item = items.get(index);
+            commands.add(new MessageBatchWriter.TextMessageCommand(
+                    item.getChatroomId(), item.getSenderId(), item.getContent(), item.getClientKey()));
+        }
+
+        List<MessageBatchWriter.WriteResult> writeResults;
+        try {
+            writeResults = messageBatchWriter.writeTextMessages(commands);
+        } catch (DataIntegrityViolationException e) {
+            // Some client key was already stored; rewrite the batch resolving keys against the database
+            writeResults = messageBatchWriter.writeTextMessages(commands, true);
+        }
+
+        BatchMessageResult[] results = new BatchMessageResult[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            MessageBatchWriter.WriteResult writeResult = writeResults.get(i);
+            results[order[i]] = new BatchMessageResult(
+                    order[i],
+                    writeResult.isSuccess(),
+                    writeResult.getMessage(),
+                    writeResult.isSuccess() ? null : writeResult.getError().getMessage());
+        }
+        return Arrays.asList(results);
     }
 
     @Override
@@ -87,7 +250,8 @@ public class MessageServiceImpl implements MessageService {
                                              List<MultipartFile> files) {
         // Validate chatroom and sender
         Chatroom chatroom = validateChatroomAndSender(chatroomId, senderId);
-        User sender = userRepository.findById(senderId).get();
+        User sender = userRepository.findById(senderId)
+                .orElseThrow(() -> new RuntimeException("User not found with id: " + senderId));
 
         // Validate file size and type
         validateFiles(files);
@@ -111,8 +275,8 @@ public class MessageServiceImpl implements MessageService {
         }
         savedMessage.setAttachments(attachments);
 
-        // Update chatroom's updatedAt timestamp
-        updateChatroomTimestamp(chatroom);
+        // Update chatroom's updatedAt timestamp and last message
+        updateChatroomActivity(savedMessage);
 
         // Publish message event to Kafka
         publishMessageEvent(savedMessage, "MESSAGE_SENT");
@@ -120,38 +284,194 @@ public class MessageServiceImpl implements MessageService {
         // Send notifications to other users in chatroom
         sendMessageNotifications(savedMessage, chatroom, sender);
 
-        return convertToDto(savedMessage);
+        MessageDto messageDto = convertToDto(savedMessage, savedMessage.getAttachments().stream()
+                .map(this::convertAttachmentToDto)
+                .toList());
+        recentMessagesCache.addAfterCommit(messageDto);
+        return messageDto;
     }
 
     @Override
     @Transactional(readOnly = true)
     public Optional<MessageDto> getMessageById(Long messageId) {
-        return messageRepository.findById(messageId)
+        return messageRepository.findWithSenderById(messageId)
                 .map(this::convertToDto);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<String> getChatroomMessagesTag(Long chatroomId) {
+        return changeVersions.chatroomTag(chatroomId);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Page<MessageDto> getChatroomMessages(Long chatroomId, Pageable pageable) {
+        if (pageable.isPaged() && pageable.getSort().isUnsorted()) {
+            Optional<List<MessageDto>> cached = findRecentMessages(chatroomId, null, (int) pageable.getOffset() + pageable.getPageSize());
+            if (cached.isPresent()) {
+                List<MessageDto> window = cached.get();
+                List<MessageDto> content = window.subList(Math.min((int) pageable.getOffset(), window.size()), window.size());
+                return new PageImpl<>(new ArrayList<>(content), pageable, chatroomCounters.messageCount(chatroomId));
+            }
+        }
+
         Chatroom chatroom = chatroomRepository.findById(chatroomId)
                 .orElseThrow(() -> new RuntimeException("Chatroom not found with id: " + chatroomId));
 
-        return messageRepository.findMessagesByChatroom(chatroom, pageable)
-                .map(this::convertToDto);
+        // The total comes from the chatroom's message counter rather than a COUNT query
+        List<Message> messages = messageRepository.findMessagesByChatroom(chatroom, pageable);
+        return new PageImpl<>(convertToDtos(messages), pageable, chatroomCounters.messageCount(chatroomId));
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<MessageDto> getChatroomMessagesBeforeId(Long chatroomId, Long messageId, int limit) {
-        Chatroom chatroom = chatroomRepository.findById(chatroomId)
-                .orElseThrow(() -> new RuntimeException("Chatroom not found with id: " + chatroomId));
+        chatroomMembershipCache.checkExists(chatroomId);
+
+        Optional<List<MessageDto>> cached = findRecentMessages(chatroomId, messageId, limit);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        // A List result skips the COUNT query a Page would run
+        return convertViewsToDtos(messageRepository.findBefore(chatroomId, messageId, PageRequest.of(0, limit)));
+    }
 
-        Pageable pageable = PageRequest.of(0, limit);
-        return messageRepository.findMessagesBeforeId(chatroom, messageId, pageable)
-                .getContent()
-                .stream()
-                .map(this::convertToDto)
+    @Override
+    @Transactional(readOnly = true)
+    public MessageHistoryDto getChatroomHistory(Long chatroomId, Long before, Long after, Long around, int limit) {
+        int cursors = (before != null ? 1 : 0) + (after != null ? 1 : 0) + (around != null ? 1 : 0);
+        if (cursors > 1) {
+            throw new RuntimeException("Only one of before, after or around may be given");
+        }
+        if (limit < 1 || limit > maxHistoryLimit) {
+            throw new RuntimeException("Limit must be between 1 and " + maxHistoryLimit);
+        }
+        chatroomMembershipCache.checkExists(chatroomId);
+
+        if (after == null && around == null) {
+            Optional<List<MessageDto>> cached = findRecentMessages(chatroomId, before, limit + 1);
+            if (cached.isPresent()) {
+                List<MessageDto> newestFirst = cached.get();
+                List<MessageDto> messages = new ArrayList<>(newestFirst.subList(0, Math.min(newestFirst.size(), limit)));
+                Collections.reverse(messages);
+                return toHistory(messages, newestFirst.size() > limit, before != null, null);
+            }
+        }
+
+        // Each side fetches one extra row to learn whether more exist, so no COUNT is needed
+        int olderLimit;
+        int newerLimit;
+        List<MessageView> older;
+        List<MessageView> newer;
+        if (after != null) {
+            olderLimit = 0;
+            newerLimit = limit;
+            older = List.of();
+            newer = messageRepository.findAfter(chatroomId, after, PageRequest.of(0, limit + 1));
+        } else if (around != null) {
+            // The anchor message itself is included on the older side
+            olderLimit = (limit + 1) / 2;
+            newerLimit = limit - olderLimit;
+            older = messageRepository.findBefore(chatroomId, around + 1, PageRequest.of(0, olderLimit + 1));
+            newer = messageRepository.findAfter(chatroomId, around, PageRequest.of(0, newerLimit + 1));
+        } else {
+            olderLimit = limit;
+            newerLimit = 0;
+            older = before != null
+                    ? messageRepository.findBefore(chatroomId, before, PageRequest.of(0, limit + 1))
+                    : messageRepository.findLatest(chatroomId, PageRequest.of(0, limit + 1));
+            newer = List.of();
+        }
+        // A side that was not queried has more messages exactly when a cursor points past it
+        boolean moreBefore = after != null || older.size() > olderLimit;
+        boolean moreAfter = before != null || newer.size() > newerLimit;
+        older = older.subList(0, Math.min(older.size(), olderLimit));
+        newer = newer.subList(0, Math.min(newer.size(), newerLimit));
+
+        List<MessageView> page = new ArrayList<>(older.size() + newer.size());
+        for (int i = older.size() - 1; i >= 0; i--) {
+            page.add(older.get(i));
+        }
+        page.addAll(newer);
+        return toHistory(convertViewsToDtos(page), moreBefore, moreAfter, after);
+    }
+
+    private MessageHistoryDto toHistory(List<MessageDto> messages, boolean moreBefore, boolean moreAfter, Long after) {
+        Long beforeCursor = null;
+        Long afterCursor = null;
+        if (!messages.isEmpty()) {
+            beforeCursor = moreBefore ? messages.get(0).getId() : null;
+            afterCursor = moreAfter ? messages.get(messages.size() - 1).getId() : null;
+        }
+        if (after != null && !moreAfter) {
+            // A client tailing with "after" has caught up and keeps polling. IDs are assigned before
+            // commit, so a slow send can still land below the newest ID seen: as in delta sync, hold
+            // the cursor back by the commit grace period and let the client drop the repeats by ID.
+            long newest = messages.isEmpty() ? after : messages.get(messages.size() - 1).getId();
+            long graceFloor = SnowflakeIdGenerator.minIdAt(Instant.now().minusMillis(syncCommitGraceMs)) - 1;
+            afterCursor = Math.max(after, Math.min(newest, graceFloor));
+        }
+        return new MessageHistoryDto(messages, beforeCursor, afterCursor);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SyncResponse syncMessages(SyncRequest request) {
+        Map<Long, Long> roomWatermarks = request.getRooms() != null ? request.getRooms() : Map.of();
+        if (request.getSince() == null && roomWatermarks.isEmpty()) {
+            throw new RuntimeException("Either since or per-room watermarks are required");
+        }
+        long floor = request.getSince() != null ? request.getSince() : Long.MAX_VALUE;
+        for (Long watermark : roomWatermarks.values()) {
+            floor = Math.min(floor, watermark);
+        }
+        long defaultWatermark = request.getSince() != null ? request.getSince() : floor;
+        int limit = request.getLimit();
+
+        // One statement for every room of the user, messages and changes merged by ID; one
+        // extra row tells whether more follow, so nothing is skipped across pages
+        List<MessageSyncReader.SyncRow> rows =
+                messageSyncReader.read(request.getUserId(), roomWatermarks, defaultWatermark, limit + 1);
+        boolean hasMore = rows.size() > limit;
+        List<MessageView> keptMessages = new ArrayList<>();
+        List<MessageChange> keptChanges = new ArrayList<>();
+        Set<Long> lateMessageIds = new HashSet<>();
+        long lastId = floor;
+        for (MessageSyncReader.SyncRow row : rows.subList(0, Math.min(rows.size(), limit))) {
+            lastId = row.id();
+            if (row.message() != null) {
+                keptMessages.add(row.message());
+            } else if (row.change().getChangeType() == MessageChange.ChangeType.CREATED) {
+                // Persisted after its ID fell behind the watermark: sent as a message, not a change
+                lateMessageIds.add(row.change().getMessageId());
+            } else {
+                keptChanges.add(row.change());
+            }
+        }
+        keptMessages.forEach(message -> lateMessageIds.remove(message.id()));
+        if (!lateMessageIds.isEmpty()) {
+            // One deleted since then is not found; its deletion is among the changes
+            keptMessages.addAll(messageRepository.findViewsByIds(lateMessageIds));
+            keptMessages.sort(Comparator.comparingLong(MessageView::id));
+        }
+
+        // IDs are assigned before commit, so a slow transaction can still land just below the
+        // newest ID seen. Unless more pages follow, hold the watermark back by the commit grace
+        // period; the overlap is sent again and deduplicated by the client.
+        long watermark = lastId;
+        if (!hasMore) {
+            long graceFloor = SnowflakeIdGenerator.minIdAt(Instant.now().minusMillis(syncCommitGraceMs)) - 1;
+            watermark = Math.max(floor, Math.min(lastId, graceFloor));
+        }
+        boolean resyncRequired = floor > 0 && floor < messageChangeLog.retentionFloor();
+
+        List<MessageChangeDto> changeDtos = keptChanges.stream()
+                .map(change -> new MessageChangeDto(change.getId(), change.getMessageId(), change.getChatroomId(),
+                        change.getChangeType(), change.getContent(), change.getCreatedAt()))
                 .toList();
+        return new SyncResponse(convertViewsToDtos(keptMessages), changeDtos, watermark, hasMore, resyncRequired);
     }
 
     @Override
@@ -177,6 +497,14 @@ public class MessageServiceImpl implements MessageService {
         publishMessageEvent(message, "MESSAGE_DELETED");
 
         messageRepository.deleteById(messageId);
+        messageRepository.flush();
+        chatroomRepository.refreshLastMessage(message.getChatroom().getId(), messageId);
+        long user1Id = chatroomMembershipCache.getUser1Id(message.getChatroom().getId());
+        long user2Id = chatroomMembershipCache.getUser2Id(message.getChatroom().getId());
+        chatroomActivityTracker.recordDeletion(message.getChatroom().getId(), user1Id, user2Id, messageId);
+        changeVersions.chatroomContentChanged(message.getChatroom().getId());
+        messageChangeLog.recordDeletion(message);
+        recentMessagesCache.removeAfterCommit(message.getChatroom().getId(), messageId);
     }
 
     @Override
@@ -199,45 +527,191 @@ public class MessageServiceImpl implements MessageService {
 
         // Publish message edit event
         publishMessageEvent(savedMessage, "MESSAGE_EDITED");
-
-        return convertToDto(savedMessage);
+        messageChangeLog.recordEdit(savedMessage);
+        chatroomRepository.updateLastMessagePreview(savedMessage.getChatroom().getId(), messageId, newContent);
+        chatroomActivityTracker.recordEdit(savedMessage.getChatroom().getId(), messageId, newContent);
+        changeVersions.chatroomContentChanged(savedMessage.getChatroom().getId());
+
+        MessageDto messageDto = convertToDto(savedMessage);
+        recentMessagesCache.replaceAfterCommit(messageDto);
+        return messageDto;
     }
 
     @Override
     @Transactional(readOnly = true)
     public long getMessageCountByChatroom(Long chatroomId) {
-        Chatroom chatroom = chatroomRepository.findById(chatroomId)
-                .orElseThrow(() -> new RuntimeException("Chatroom not found with id: " + chatroomId));
+        return chatroomCounters.messageCount(chatroomId);
+    }
 
-        return messageRepository.countByChatroom(chatroom);
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Map<String, Map<String, Object>> getPayloadStats() {
+        return payloadStats.snapshot();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Map<String, Object> getHistoryPageCacheStats() {
+        return historyPageCache.snapshot();
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<MessageDto> searchMessages(Long chatroomId, String searchTerm) {
-        Chatroom chatroom = chatroomRepository.findById(chatroomId)
-                .orElseThrow(() -> new RuntimeException("Chatroom not found with id: " + chatroomId));
+    public void exportChatroom(Long chatroomId, OutputStream out) throws IOException {
+        chatroomMembershipCache.checkExists(chatroomId);
+
+        // Rows go straight from the cursors to the generator: nothing is collected, and
+        // projections never enter the persistence context, so memory stays flat
+        try (Stream<MessageView> messages = messageRepository.streamByChatroom(chatroomId);
+             Stream<AttachmentDto> attachmentStream = attachmentRepository.streamByChatroom(chatroomId);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            Iterator<AttachmentDto> attachments = attachmentStream.iterator();
+            AttachmentDto nextAttachment = attachments.hasNext() ? attachments.next() : null;
+            int written = 0;
+
+            for (Iterator<MessageView> it = messages.iterator(); it.hasNext(); ) {
+                MessageView message = it.next();
+                generator.writeStartObject();
+                generator.writeStringField("id", message.id().toString());
+                generator.writeStringField("messageType", message.messageType().name());
+                generator.writeStringField("content", message.content());
+                generator.writeNumberField("senderId", message.senderId());
+                generator.writeStringField("senderUsername", message.senderUsername());
+                generator.writeStringField("createdAt", message.createdAt().toString());
+                if (message.updatedAt() != null) {
+                    generator.writeStringField("updatedAt", message.updatedAt().toString());
+                }
+
+                // Both cursors are ordered by message ID, so a message's attachments are next in line
+                while (nextAttachment != null && nextAttachment.getMessageId() < message.id()) {
+                    nextAttachment = attachments.hasNext() ? attachments.next() : null;
+                }
+                if (nextAttachment != null && nextAttachment.getMessageId().equals(message.id())) {
+                    generator.writeArrayFieldStart("attachments");
+                    while (nextAttachment != null && nextAttachment.getMessageId().equals(message.id())) {
+                        generator.writeStartObject();
+                        generator.writeStringField("id", nextAttachment.getId().toString());
+                        generator.writeStringField("fileName", nextAttachment.getFileName());
+                        generator.writeStringField("fileType", nextAttachment.getFileType());
+                        if (nextAttachment.getFileSize() != null) {
+                            generator.writeNumberField("fileSize", nextAttachment.getFileSize());
+                        }
+                        generator.writeStringField("attachmentType", nextAttachment.getAttachmentType().name());
+                        generator.writeStringField("filePath", nextAttachment.getFilePath());
+                        generator.writeEndObject();
+                        nextAttachment = attachments.hasNext() ? attachments.next() : null;
+                    }
+                    generator.writeEndArray();
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+
+                if (++written % exportFlushEvery == 0) {
+                    generator.flush();
+                }
+            }
+            generator.flush();
+        }
+    }
 
-        return messageRepository.findByChatroomAndContentContainingIgnoreCase(chatroom, searchTerm)
-                .stream()
-                .map(this::convertToDto)
-                .toList();
+    @Override
+    @Transactional(readOnly = true)
+    public List<MessageDto> searchMessages(Long chatroomId, String searchTerm, int page, int limit) {
+        if (page < 0) {
+            throw new RuntimeException("Page must not be negative");
+        }
+        if (limit < 1 || limit > maxSearchLimit) {
+            throw new RuntimeException("Limit must be between 1 and " + maxSearchLimit);
+        }
+        chatroomMembershipCache.checkExists(chatroomId);
+
+        List<String> words = SearchTokenizer.words(searchTerm);
+        if (words.isEmpty()) {
+            return List.of();
+        }
+        return loadRanked(messageSearchEngine.search(chatroomId, words, page, limit));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MessageSearchResultDto searchUserMessages(Long userId, String searchTerm, String cursor, int limit) {
+        if (limit < 1 || limit > maxSearchLimit) {
+            throw new RuntimeException("Limit must be between 1 and " + maxSearchLimit);
+        }
+        if (!userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found with id: " + userId);
+        }
+        SearchHit after = cursor != null ? decodeSearchCursor(cursor) : null;
+
+        List<String> words = SearchTokenizer.words(searchTerm);
+        if (words.isEmpty()) {
+            return new MessageSearchResultDto(List.of(), null);
+        }
+        // One extra hit tells whether there is a next page
+        List<SearchHit> hits = messageSearchEngine.searchForUser(userId, words, after, limit + 1);
+        boolean hasMore = hits.size() > limit;
+        List<SearchHit> page = hasMore ? hits.subList(0, limit) : hits;
+        List<MessageDto> messages = loadRanked(page.stream().map(SearchHit::messageId).toList());
+        String nextCursor = hasMore ? encodeSearchCursor(page.get(page.size() - 1)) : null;
+        return new MessageSearchResultDto(messages, nextCursor);
     }
 
     // Private helper methods
-    private Chatroom validateChatroomAndSender(Long chatroomId, Long senderId) {
-        Chatroom chatroom = chatroomRepository.findById(chatroomId)
-                .orElseThrow(() -> new RuntimeException("Chatroom not found with id: " + chatroomId));
-        
-        User sender = userRepository.findById(senderId)
-                .orElseThrow(() -> new RuntimeException("User not found with id: " + senderId));
 
-        // Check if user is part of the chatroom
-        if (!chatroom.getUser1().getId().equals(senderId) && !chatroom.getUser2().getId().equals(senderId)) {
-            throw new RuntimeException("User is not part of this chatroom");
+    // Loads the messages in the engine's order; the views come back unordered. IDs the engine
+    // has not yet seen deleted are dropped here
+    private List<MessageDto> loadRanked(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, MessageView> viewsById = new HashMap<>();
+        for (MessageView view : messageRepository.findViewsByIds(ids)) {
+            viewsById.put(view.id(), view);
+        }
+        List<MessageView> ranked = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            MessageView view = viewsById.get(id);
+            if (view != null) {
+                ranked.add(view);
+            }
+        }
+        return convertViewsToDtos(ranked);
+    }
+
+    // The cursor is the last hit of the page: "<score>_<message ID>"
+    private static String encodeSearchCursor(SearchHit hit) {
+        return hit.score() + "_" + hit.messageId();
+    }
+
+    private static SearchHit decodeSearchCursor(String cursor) {
+        int separator = cursor.lastIndexOf('_');
+        try {
+            return new SearchHit(Long.parseLong(cursor.substring(separator + 1)),
+                    Double.parseDouble(cursor.substring(0, Math.max(separator, 0))));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid search cursor: " + cursor);
         }
+    }
+    private Chatroom validateChatroomAndSender(Long chatroomId, Long senderId) {
+        // Membership comes from the cache; the chatroom itself is only a reference
+        chatroomMembershipCache.checkMember(chatroomId, senderId);
+        return chatroomRepository.getReferenceById(chatroomId);
+    }
 
-        return chatroom;
+    // Newest first. A miss on the latest window loads the room's ring first; older windows
+    // are only answered when the ring already covers them
+    private Optional<List<MessageDto>> findRecentMessages(Long chatroomId, Long beforeId, int limit) {
+        Optional<List<MessageDto>> cached = recentMessagesCache.findBefore(chatroomId, beforeId, limit);
+        if (cached.isPresent() || beforeId != null || limit > recentMessagesCache.getRoomCapacity()
+                || recentMessagesCache.contains(chatroomId)) {
+            return cached;
+        }
+        chatroomMembershipCache.checkExists(chatroomId);
+        long generation = recentMessagesCache.generation(chatroomId);
+        List<MessageView> latest = messageRepository.findLatest(chatroomId, PageRequest.of(0, recentMessagesCache.getRoomCapacity()));
+        recentMessagesCache.load(chatroomId, generation, convertViewsToDtos(latest));
+        return recentMessagesCache.findBefore(chatroomId, null, limit);
     }
 
     private void validateFiles(List<MultipartFile> files) {
@@ -253,9 +727,12 @@ public class MessageServiceImpl implements MessageService {
         }
     }
 
-    private void updateChatroomTimestamp(Chatroom chatroom) {
-        chatroom.setUpdatedAt(LocalDateTime.now());
-        chatroomRepository.save(chatroom);
+    private void updateChatroomActivity(Message message) {
+        Long chatroomId = message.getChatroom().getId();
+        long user1Id = chatroomMembershipCache.getUser1Id(chatroomId);
+        long user2Id = chatroomMembershipCache.getUser2Id(chatroomId);
+        chatroomActivityTracker.recordMessage(chatroomId, user1Id, user2Id,
+                message.getId(), message.getSender().getId(), message.getContent(), LocalDateTime.now());
     }
 
     private void publishMessageEvent(Message message, String eventType) {
@@ -272,12 +749,12 @@ public class MessageServiceImpl implements MessageService {
             event.setAttachmentUrl(message.getAttachments().get(0).getFilePath());
         }
         
-        kafkaService.publishMessageEvent(event);
+        outboxService.enqueueMessageEvent(event);
     }
 
     private void sendMessageNotifications(Message message, Chatroom chatroom, User sender) {
-        User recipient = chatroom.getUser1().getId().equals(sender.getId()) ? 
-                        chatroom.getUser2() : chatroom.getUser1();
+        User recipient = userRepository.getReferenceById(
+                chatroomMembershipCache.getOtherParticipant(chatroom.getId(), sender.getId()));
 
         NotificationEvent notification = new NotificationEvent();
         notification.setEventType("NEW_MESSAGE");
@@ -291,7 +768,7 @@ public class MessageServiceImpl implements MessageService {
         notification.setMessageId(message.getId().toString());
         notification.setTimestamp(LocalDateTime.now());
 
-        kafkaService.publishNotificationEvent(notification);
+        outboxService.enqueueNotificationEvent(notification);
     }
 
     private Attachment saveAttachment(MultipartFile file, Message message) throws IOException {
@@ -325,13 +802,71 @@ public class MessageServiceImpl implements MessageService {
     }
 
     private MessageDto convertToDto(Message message) {
-        UserDto senderDto = convertUserToDto(message.getSender());
-        
-        List<AttachmentDto> attachmentDtos = message.getAttachments().stream()
-                .map(this::convertAttachmentToDto)
+        return convertToDtos(List.of(message)).get(0);
+    }
+
+    // Senders are expected to be fetched with the messages; attachments for the whole list come
+    // from one IN query, issued only for media messages since text messages never have any
+    private List<MessageDto> convertToDtos(List<Message> messages) {
+        List<Long> mediaMessageIds = messages.stream()
+                .filter(message -> message.getMessageType() != Message.MessageType.TEXT)
+                .map(Message::getId)
+                .toList();
+        Map<Long, List<AttachmentDto>> attachmentsByMessage = new HashMap<>();
+        if (!mediaMessageIds.isEmpty()) {
+            for (Attachment attachment : attachmentRepository.findByMessageIdIn(mediaMessageIds)) {
+                attachmentsByMessage.computeIfAbsent(attachment.getMessage().getId(), id -> new ArrayList<>())
+                        .add(convertAttachmentToDto(attachment));
+            }
+        }
+        return messages.stream()
+                .map(message -> convertToDto(message, attachmentsByMessage.getOrDefault(message.getId(), List.of())))
+                .toList();
+    }
+
+    // Projection counterpart of convertToDtos, producing the same DTO shape down to the sender
+    private List<MessageDto> convertViewsToDtos(List<MessageView> views) {
+        List<Long> mediaMessageIds = views.stream()
+                .filter(view -> view.messageType() != Message.MessageType.TEXT)
+                .map(MessageView::id)
                 .toList();
+        Map<Long, List<AttachmentDto>> attachmentsByMessage = new HashMap<>();
+        if (!mediaMessageIds.isEmpty()) {
+            for (AttachmentDto attachment : attachmentRepository.findDtosByMessageIdIn(mediaMessageIds)) {
+                attachmentsByMessage.computeIfAbsent(attachment.getMessageId(), id -> new ArrayList<>()).add(attachment);
+            }
+        }
+
+        List<MessageDto> dtos = new ArrayList<>(views.size());
+        for (MessageView view : views) {
+            UserDto senderDto = new UserDto(
+                    view.senderId(),
+                    view.senderUsername(),
+                    view.senderBio(),
+                    view.senderAvatarUrl(),
+                    view.senderCreatedAt(),
+                    view.senderUpdatedAt()
+            );
+
+            MessageDto dto = new MessageDto(
+                    view.id(),
+                    view.content(),
+                    view.messageType(),
+                    senderDto,
+                    view.chatroomId(),
+                    view.createdAt(),
+                    view.updatedAt()
+            );
+            dto.setAttachments(attachmentsByMessage.getOrDefault(view.id(), List.of()));
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+
+    private MessageDto convertToDto(Message message, List<AttachmentDto> attachmentDtos) {
+        UserDto senderDto = convertUserToDto(message.getSender());
 
-        return new MessageDto(
+        MessageDto dto = new MessageDto(
                 message.getId(),
                 message.getContent(),
                 message.getMessageType(),
@@ -340,6 +875,8 @@ public class MessageServiceImpl implements MessageService {
                 message.getCreatedAt(),
                 message.getUpdatedAt()
         );
+        dto.setAttachments(attachmentDtos);
+        return dto;
     }
 
     private UserDto convertUserToDto(User user) {
@@ -0,0 +1,98 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageView;
+import com.whatsapp.model.Message;
+import com.whatsapp.model.MessageChange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads delta sync in one statement: the user's chatrooms are joined in SQL, each read from
+ * its own watermark along (chatroom_id, id), and new messages and logged changes are merged
+ * by ID under a single limit. Rooms without a watermark of their own use the default one.
+ */
+@Component
+public class MessageSyncReader {
+
+    private static final String MESSAGES =
+            "SELECT 'M' AS kind, m.id, m.id AS message_id, m.chatroom_id, NULL AS change_type, m.content, " +
+            "m.message_type, m.created_at, m.updated_at, s.id AS sender_id, s.username, s.bio, s.avatar_url, " +
+            "s.created_at AS sender_created_at, s.updated_at AS sender_updated_at " +
+            "FROM chatrooms c %s JOIN messages m ON m.chatroom_id = c.id AND m.id > %s " +
+            "JOIN users s ON s.id = m.sender_id WHERE c.user1_id = ? OR c.user2_id = ?";
+
+    private static final String CHANGES =
+            "SELECT 'C', x.id, x.message_id, x.chatroom_id, x.change_type, x.content, " +
+            "NULL, x.created_at, NULL, NULL, NULL, NULL, NULL, NULL, NULL " +
+            "FROM chatrooms c %s JOIN message_changes x ON x.chatroom_id = c.id AND x.id > %s " +
+            "WHERE c.user1_id = ? OR c.user2_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** A new message or a logged change, whichever the row is. */
+    public record SyncRow(MessageView message, MessageChange change) {
+
+        public long id() {
+            return message != null ? message.id() : change.getId();
+        }
+    }
+
+    // Up to limit rows past the watermarks, oldest first
+    public List<SyncRow> read(long userId, Map<Long, Long> roomWatermarks, long defaultWatermark, int limit) {
+        String watermarks = "";
+        String since = "?";
+        List<Object> watermarkArgs = new ArrayList<>();
+        if (!roomWatermarks.isEmpty()) {
+            watermarks = "LEFT JOIN (VALUES " +
+                    String.join(", ", Collections.nCopies(roomWatermarks.size(), "(CAST(? AS BIGINT), CAST(? AS BIGINT))")) +
+                    ") w(chatroom_id, since) ON w.chatroom_id = c.id";
+            since = "COALESCE(w.since, ?)";
+            roomWatermarks.forEach((chatroomId, watermark) -> {
+                watermarkArgs.add(chatroomId);
+                watermarkArgs.add(watermark);
+            });
+        }
+        String sql = "SELECT * FROM (" + String.format(MESSAGES, watermarks, since) + " UNION ALL " +
+                String.format(CHANGES, watermarks, since) + ") r ORDER BY id LIMIT ?";
+
+        List<Object> args = new ArrayList<>();
+        for (int branch = 0; branch < 2; branch++) {
+            args.addAll(watermarkArgs);
+            args.add(defaultWatermark);
+            args.add(userId);
+            args.add(userId);
+        }
+        args.add(limit);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> toRow(rs), args.toArray());
+    }
+
+    private static SyncRow toRow(ResultSet rs) throws SQLException {
+        if ("M".equals(rs.getString("kind"))) {
+            return new SyncRow(new MessageView(rs.getLong("id"), rs.getString("content"),
+                    Message.MessageType.valueOf(rs.getString("message_type")), rs.getLong("chatroom_id"),
+                    toTime(rs.getTimestamp("created_at")), toTime(rs.getTimestamp("updated_at")),
+                    rs.getLong("sender_id"), rs.getString("username"), rs.getString("bio"), rs.getString("avatar_url"),
+                    toTime(rs.getTimestamp("sender_created_at")), toTime(rs.getTimestamp("sender_updated_at"))), null);
+        }
+        MessageChange change = new MessageChange(rs.getLong("message_id"), rs.getLong("chatroom_id"),
+                MessageChange.ChangeType.valueOf(rs.getString("change_type")), rs.getString("content"));
+        change.setId(rs.getLong("id"));
+        change.setCreatedAt(toTime(rs.getTimestamp("created_at")));
+        return new SyncRow(null, change);
+    }
+
+    private static LocalDateTime toTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.service.OutboxService;
+import com.whatsapp.util.BackgroundTaskRunner;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Drains the outbox on a thread of its own rather than the shared scheduler, whose single
+ * thread would otherwise sit behind the broker's acknowledgements and delay every other
+ * scheduled job.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private BackgroundTaskRunner backgroundTaskRunner;
+
+    @Value("${app.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.outbox.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.outbox.poll-interval-ms:200}")
+    private long pollIntervalMs;
+
+    private Future<?> relayer;
+    private volatile boolean running;
+    // Counted down on shutdown, so an idle relay stops without sleeping out its poll interval
+    private final CountDownLatch stopping = new CountDownLatch(1);
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        relayer = backgroundTaskRunner.start("outbox-relay", this::relayLoop);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        stopping.countDown();
+        try {
+            // A batch in flight finishes within the send timeout and releases what it did not relay
+            relayer.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Outbox relay did not stop cleanly: {}", e.getMessage());
+        }
+    }
+
+    private void relayLoop() {
+        while (running) {
+            relay();
+            try {
+                stopping.await(pollIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    public void relay() {
+        try {
+            // Keep draining while batches come back full, up to a cap per run
+            for (int i = 0; i < maxBatchesPerRun && running; i++) {
+                if (outboxService.relayBatch() < batchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Outbox relay failed: {}", e.getMessage(), e);
+        }
+    }
+}
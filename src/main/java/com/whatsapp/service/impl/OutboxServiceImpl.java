@@ -0,0 +1,170 @@
+package com.whatsapp.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.dto.MessageEvent;
+import com.whatsapp.dto.NotificationEvent;
+import com.whatsapp.model.OutboxEvent;
+import com.whatsapp.repository.OutboxEventRepository;
+import com.whatsapp.service.KafkaService;
+import com.whatsapp.service.OutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Transactional outbox: events are stored in the sender's transaction and published
+ * to Kafka later by {@link OutboxRelay}, so an event never escapes a rolled-back send.
+ * A batch is claimed for a lease in a short transaction, sent with no transaction open,
+ * and a row is deleted only once the broker has acknowledged its event; anything else is
+ * released for the next run, or taken over once the lease lapses if the relay died. Delivery
+ * is therefore at least once, and a retried event can arrive after events queued behind it.
+ */
+@Service
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxServiceImpl.class);
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private KafkaService kafkaService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.outbox.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.outbox.claim-lease-ms:120000}")
+    private long claimLeaseMs;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueMessageEvent(MessageEvent event) {
+        outboxEventRepository.save(new OutboxEvent(OutboxEvent.EventKind.MESSAGE, serialize(event)));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueNotificationEvent(NotificationEvent event) {
+        outboxEventRepository.save(new OutboxEvent(OutboxEvent.EventKind.NOTIFICATION, serialize(event)));
+    }
+
+    @Override
+    public int relayBatch() {
+        // Claimed in a short transaction of its own, so no row lock or connection is held while the broker is waited on
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = transactionTemplate.execute(status -> {
+            List<OutboxEvent> locked = outboxEventRepository.lockNextBatch(now, batchSize);
+            if (!locked.isEmpty()) {
+                outboxEventRepository.claim(ids(locked), now.plus(claimLeaseMs, ChronoUnit.MILLIS));
+            }
+            return locked;
+        });
+        if (events == null || events.isEmpty()) {
+            return 0;
+        }
+
+        // A send can block for the producer's max.block.ms while it has no metadata or buffer space,
+        // so none is started once the deadline has passed; the rest go back for the next run
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        List<Long> relayedIds = new ArrayList<>(events.size());
+        List<OutboxEvent> sentEvents = new ArrayList<>(events.size());
+        List<CompletableFuture<?>> sends = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            try {
+                sends.add(send(event));
+                sentEvents.add(event);
+            } catch (JsonProcessingException e) {
+                // A payload that cannot be read back will never succeed, so drop it
+                logger.error("Discarding unreadable outbox event {}: {}", event.getId(), e.getMessage());
+                relayedIds.add(event.getId());
+            } catch (RuntimeException e) {
+                logger.warn("Outbox event {} could not be sent: {}", event.getId(), e.getMessage());
+            }
+        }
+
+        // All sends are in flight; wait for their acknowledgements under the same deadline
+        for (int i = 0; i < sends.size(); i++) {
+            try {
+                sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                relayedIds.add(sentEvents.get(i).getId());
+            } catch (ExecutionException | TimeoutException e) {
+                // Not acknowledged; counted with the unsent events below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        List<Long> unrelayedIds = ids(events);
+        unrelayedIds.removeAll(relayedIds);
+        if (!unrelayedIds.isEmpty()) {
+            logger.warn("{} of {} outbox events were not acknowledged, keeping them for the next run",
+                    unrelayedIds.size(), events.size());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!relayedIds.isEmpty()) {
+                outboxEventRepository.deleteAllByIdInBatch(relayedIds);
+            }
+            if (!unrelayedIds.isEmpty()) {
+                outboxEventRepository.claim(unrelayedIds, null);
+            }
+        });
+        // Short of a full batch when anything failed, so the relay stops draining until its next run
+        return relayedIds.size();
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        List<Long> ids = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+    private CompletableFuture<?> send(OutboxEvent event) throws JsonProcessingException {
+        switch (event.getEventKind()) {
+            case MESSAGE:
+                return kafkaService.sendMessageEvent(objectMapper.readValue(event.getPayload(), MessageEvent.class));
+            case NOTIFICATION:
+                return kafkaService.sendNotificationEvent(objectMapper.readValue(event.getPayload(), NotificationEvent.class));
+            default:
+                logger.warn("Unknown outbox event kind: {}", event.getEventKind());
+                return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private String serialize(Object event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize event: " + e.getMessage());
+        }
+    }
+}
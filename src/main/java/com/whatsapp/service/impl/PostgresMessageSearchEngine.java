@@ -0,0 +1,60 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.SearchHit;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.service.MessageSearchEngine;
+import com.whatsapp.util.SearchTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search on the primary database: the GIN-indexed content_tsv column, ranked by ts_rank.
+ */
+@Service
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "postgres", matchIfMissing = true)
+public class PostgresMessageSearchEngine implements MessageSearchEngine {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Override
+    public List<Long> search(Long chatroomId, List<String> words, int page, int limit) {
+        String query = toPrefixQuery(words);
+        if (query.isEmpty()) {
+            return List.of();
+        }
+        return messageRepository.searchIdsInChatroom(chatroomId, query, PageRequest.of(page, limit));
+    }
+
+    @Override
+    public List<SearchHit> searchForUser(Long userId, List<String> words, SearchHit after, int limit) {
+        String query = toPrefixQuery(words);
+        if (query.isEmpty()) {
+            return List.of();
+        }
+        List<Object[]> rows = after == null
+                ? messageRepository.searchForUser(userId, query, PageRequest.of(0, limit))
+                : messageRepository.searchForUserAfter(userId, query, after.score(), after.messageId(), PageRequest.of(0, limit));
+        List<SearchHit> hits = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            // ts_rank is a real; as a double it survives the cursor round trip exactly
+            hits.add(new SearchHit(((Number) row[0]).longValue(), ((Number) row[1]).doubleValue()));
+        }
+        return hits;
+    }
+
+    // ["hello", "wor"] becomes "hello:* & wor:*". Each word is split again to letters and
+    // digits, so quotes, operators and ":*" never reach to_tsquery; empty when nothing is left
+    static String toPrefixQuery(List<String> words) {
+        List<String> terms = new ArrayList<>();
+        for (String word : words) {
+            terms.addAll(SearchTokenizer.words(word));
+        }
+        return terms.isEmpty() ? "" : String.join(":* & ", terms) + ":*";
+    }
+}
@@ -0,0 +1,301 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the latest messages of recently read chatrooms in a fixed-size ring per room, so
+ * the first history pages of active conversations are answered without a query. A ring
+ * always holds exactly the newest messages of its room (or all of them, when the room is
+ * smaller than a ring); cold rooms are evicted least-recently-used once the estimated
+ * size of the rings exceeds the budget.
+ *
+ * <p>Rooms are spread over independently locked segments, each with its own LRU order and
+ * share of the budget, so reads and sends in different rooms rarely wait on each other.
+ * Sends, edits and deletes made through other instances never reach this cache, so a ring
+ * is dropped and reloaded once it is older than the TTL.
+ */
+@Component
+public class RecentMessagesCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+    private static final int SEGMENTS = 64;
+
+    @Value("${app.messages.recent-cache.per-room:100}")
+    private int roomCapacity;
+
+    @Value("${app.messages.recent-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${app.messages.recent-cache.ttl-ms:2000}")
+    private long ttlMs;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    // Bumped on every change to a room, so a load that raced with a send is not installed stale
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public RecentMessagesCache() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public int getRoomCapacity() {
+        return roomCapacity;
+    }
+
+    public boolean contains(long chatroomId) {
+        Segment segment = segmentFor(chatroomId);
+        segment.lock.lock();
+        try {
+            return segment.current(chatroomId) != null;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // Read before querying the database for a load
+    public long generation(long chatroomId) {
+        return generations.get(stripe(chatroomId));
+    }
+
+    // newestFirst must be the result of a "latest roomCapacity messages" query
+    public void load(long chatroomId, long generation, List<MessageDto> newestFirst) {
+        Segment segment = segmentFor(chatroomId);
+        segment.lock.lock();
+        try {
+            if (generations.get(stripe(chatroomId)) != generation || segment.current(chatroomId) != null) {
+                return;
+            }
+            Ring ring = new Ring(roomCapacity, newestFirst.size() < roomCapacity, System.currentTimeMillis());
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                ring.insert(newestFirst.get(i));
+            }
+            segment.rooms.put(chatroomId, ring);
+            segment.usedBytes += ring.bytes;
+            segment.evictOverBudget(maxBytes / SEGMENTS);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} messages older than {@code beforeId} (or the latest when it
+     * is null), newest first, or empty when the ring cannot answer the whole window.
+     */
+    public Optional<List<MessageDto>> findBefore(long chatroomId, Long beforeId, int limit) {
+        Segment segment = segmentFor(chatroomId);
+        segment.lock.lock();
+        try {
+            Ring ring = segment.current(chatroomId);
+            if (ring == null) {
+                return Optional.empty();
+            }
+            List<MessageDto> result = new ArrayList<>(Math.min(limit, ring.count));
+            for (int i = ring.count - 1; i >= 0 && result.size() < limit; i--) {
+                MessageDto message = ring.get(i);
+                if (beforeId == null || message.getId() < beforeId) {
+                    result.add(message);
+                }
+            }
+            return result.size() == limit || ring.wholeRoom ? Optional.of(result) : Optional.empty();
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void addAfterCommit(MessageDto message) {
+        afterCommit(() -> update(message.getChatroomId(), ring -> ring.insert(message)));
+    }
+
+    public void replaceAfterCommit(MessageDto message) {
+        afterCommit(() -> update(message.getChatroomId(), ring -> ring.replace(message)));
+    }
+
+    public void removeAfterCommit(long chatroomId, long messageId) {
+        afterCommit(() -> update(chatroomId, ring -> ring.remove(messageId)));
+    }
+
+    public void forget(long chatroomId) {
+        Segment segment = segmentFor(chatroomId);
+        segment.lock.lock();
+        try {
+            generations.incrementAndGet(stripe(chatroomId));
+            segment.drop(chatroomId);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private void update(long chatroomId, Consumer<Ring> change) {
+        Segment segment = segmentFor(chatroomId);
+        segment.lock.lock();
+        try {
+            generations.incrementAndGet(stripe(chatroomId));
+            Ring ring = segment.rooms.get(chatroomId);
+            if (ring == null) {
+                return;
+            }
+            long before = ring.bytes;
+            change.accept(ring);
+            segment.usedBytes += ring.bytes - before;
+            segment.evictOverBudget(maxBytes / SEGMENTS);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private Segment segmentFor(long chatroomId) {
+        return segments[(int) (chatroomId & (SEGMENTS - 1))];
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static int stripe(long chatroomId) {
+        return (int) (chatroomId & (GENERATION_STRIPES - 1));
+    }
+
+    private static long estimateBytes(MessageDto message) {
+        // Object headers, boxed fields, sender DTO and the content characters
+        return 320 + 2L * (message.getContent() != null ? message.getContent().length() : 0);
+    }
+
+    private class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Long, Ring> rooms = new LinkedHashMap<>(16, 0.75f, true);
+        private long usedBytes;
+
+        // The room's ring, unless it has outlived the TTL; caller holds the lock
+        private Ring current(long chatroomId) {
+            Ring ring = rooms.get(chatroomId);
+            if (ring != null && System.currentTimeMillis() - ring.loadedAt > ttlMs) {
+                drop(chatroomId);
+                return null;
+            }
+            return ring;
+        }
+
+        private void drop(long chatroomId) {
+            Ring ring = rooms.remove(chatroomId);
+            if (ring != null) {
+                usedBytes -= ring.bytes;
+            }
+        }
+
+        private void evictOverBudget(long budget) {
+            Iterator<Map.Entry<Long, Ring>> coldest = rooms.entrySet().iterator();
+            while (usedBytes > budget && coldest.hasNext()) {
+                usedBytes -= coldest.next().getValue().bytes;
+                coldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Circular buffer ordered by message ID, oldest at {@code head}. When full, a newer
+     * message overwrites the oldest one and the ring stops covering the whole room.
+     */
+    private static class Ring {
+
+        private final MessageDto[] slots;
+        private final long loadedAt;
+        private int head;
+        private int count;
+        private long bytes;
+        private boolean wholeRoom;
+
+        private Ring(int capacity, boolean wholeRoom, long loadedAt) {
+            this.slots = new MessageDto[capacity];
+            this.wholeRoom = wholeRoom;
+            this.loadedAt = loadedAt;
+        }
+
+        private MessageDto get(int index) {
+            return slots[(head + index) % slots.length];
+        }
+
+        private void set(int index, MessageDto message) {
+            slots[(head + index) % slots.length] = message;
+        }
+
+        private void insert(MessageDto message) {
+            // Commits can land slightly out of ID order, so find the position from the newest end
+            int position = count;
+            while (position > 0 && get(position - 1).getId() > message.getId()) {
+                position--;
+            }
+            if (position > 0 && get(position - 1).getId().equals(message.getId())) {
+                return;
+            }
+            if (position == 0 && count > 0 && !wholeRoom) {
+                // Older than everything held; the ring still holds the newest messages exactly
+                return;
+            }
+            if (count == slots.length) {
+                if (position == 0) {
+                    return;
+                }
+                bytes -= estimateBytes(get(0));
+                head = (head + 1) % slots.length;
+                count--;
+                position--;
+                wholeRoom = false;
+            }
+            for (int i = count; i > position; i--) {
+                set(i, get(i - 1));
+            }
+            set(position, message);
+            count++;
+            bytes += estimateBytes(message);
+        }
+
+        private void replace(MessageDto message) {
+            for (int i = 0; i < count; i++) {
+                if (get(i).getId().equals(message.getId())) {
+                    bytes += estimateBytes(message) - estimateBytes(get(i));
+                    set(i, message);
+                    return;
+                }
+            }
+        }
+
+        private void remove(long messageId) {
+            for (int i = 0; i < count; i++) {
+                if (get(i).getId() == messageId) {
+                    bytes -= estimateBytes(get(i));
+                    for (int j = i; j < count - 1; j++) {
+                        set(j, get(j + 1));
+                    }
+                    count--;
+                    set(count, null);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.whatsapp.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An immutable, memory-mapped segment of the embedded search index. Terms are keyed by
+ * chatroom and sorted by (chatroom ID, UTF-8 bytes), so the terms of one room that share
+ * a prefix are contiguous. A term's postings are message IDs in ascending order, stored
+ * as varint deltas, each followed by the term's count in that message. The segment also
+ * lists the messages it deleted and replaced (re-indexed after an edit); replaying those
+ * lists in segment order tells which copy of a message is live.
+ *
+ * <p>Layout: a header (magic, version, sequence number, counts and offsets), term bytes and
+ * postings, the fixed-width term index, then the deleted and replaced IDs as varint deltas.
+ * Offsets are 64-bit and the file is mapped in 1 GiB chunks, as a single mapping cannot
+ * exceed 2 GiB; values that straddle two chunks are read byte by byte.
+ */
+final class SearchSegment {
+
+    private static final int MAGIC = 0x57534958; // "WSIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 44;
+    // chatroom ID, term offset, term length, postings offset, document frequency
+    private static final int ENTRY_BYTES = 32;
+    private static final int CHUNK_SHIFT = 30;
+
+    private final String fileName;
+    private final MappedByteBuffer[] chunks;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final long size;
+    private final long seq;
+    private final int termCount;
+    private final long indexOffset;
+    private final int deletedCount;
+    private final int replacedCount;
+    private final long idsOffset;
+
+    private SearchSegment(String fileName, MappedByteBuffer[] chunks, int chunkShift, long size) {
+        this.fileName = fileName;
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.size = size;
+        this.seq = getLong(8);
+        this.termCount = getInt(16);
+        this.indexOffset = getLong(20);
+        this.deletedCount = getInt(28);
+        this.replacedCount = getInt(32);
+        this.idsOffset = getLong(36);
+    }
+
+    static SearchSegment open(Path path) throws IOException {
+        return open(path, CHUNK_SHIFT);
+    }
+
+    // Smaller chunks let tests cross chunk boundaries without writing gigabytes
+    static SearchSegment open(Path path, int chunkShift) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Not a search index segment: " + path);
+            }
+            // The mappings stay valid after the channel is closed
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size - 1) >>> chunkShift) + 1];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << chunkShift;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << chunkShift));
+            }
+            if (chunks[0].getInt(0) != MAGIC || chunks[0].getInt(4) != VERSION) {
+                throw new IOException("Not a search index segment: " + path);
+            }
+            return new SearchSegment(path.getFileName().toString(), chunks, chunkShift, size);
+        }
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    long sizeBytes() {
+        return size;
+    }
+
+    long seq() {
+        return seq;
+    }
+
+    int termCount() {
+        return termCount;
+    }
+
+    long chatroomIdAt(int entry) {
+        return getLong(entryPosition(entry));
+    }
+
+    byte[] termAt(int entry) {
+        long position = entryPosition(entry);
+        byte[] term = new byte[getInt(position + 16)];
+        long termOffset = getLong(position + 8);
+        for (int i = 0; i < term.length; i++) {
+            term[i] = get(termOffset + i);
+        }
+        return term;
+    }
+
+    void forEachPosting(int entry, PostingConsumer consumer) {
+        long position = entryPosition(entry);
+        Cursor cursor = new Cursor(getLong(position + 20));
+        int count = getInt(position + 28);
+        long messageId = 0;
+        for (int i = 0; i < count; i++) {
+            messageId += cursor.nextVarLong();
+            consumer.accept(messageId, (int) cursor.nextVarLong());
+        }
+    }
+
+    // Index of the first term at or after (chatroomId, prefix)
+    int lowerBound(long chatroomId, byte[] prefix) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKeys(chatroomIdAt(middle), termAt(middle), chatroomId, prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    boolean hasPrefix(int entry, long chatroomId, byte[] prefix) {
+        if (entry >= termCount || chatroomIdAt(entry) != chatroomId) {
+            return false;
+        }
+        long position = entryPosition(entry);
+        if (getInt(position + 16) < prefix.length) {
+            return false;
+        }
+        long termOffset = getLong(position + 8);
+        for (int i = 0; i < prefix.length; i++) {
+            if (get(termOffset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long[] deletedIds() {
+        return readIds(new Cursor(idsOffset), deletedCount);
+    }
+
+    long[] replacedIds() {
+        Cursor cursor = new Cursor(idsOffset);
+        readIds(cursor, deletedCount);
+        return readIds(cursor, replacedCount);
+    }
+
+    private long entryPosition(int entry) {
+        return indexOffset + (long) entry * ENTRY_BYTES;
+    }
+
+    private byte get(long position) {
+        return chunks[(int) (position >>> chunkShift)].get((int) (position & chunkMask));
+    }
+
+    private int getInt(long position) {
+        int offset = (int) (position & chunkMask);
+        if (offset <= chunkMask - 3) {
+            return chunks[(int) (position >>> chunkShift)].getInt(offset);
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private long getLong(long position) {
+        int offset = (int) (position & chunkMask);
+        if (offset <= chunkMask - 7) {
+            return chunks[(int) (position >>> chunkShift)].getLong(offset);
+        }
+        return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xFFFFFFFFL);
+    }
+
+    private static long[] readIds(Cursor cursor, int count) {
+        long[] ids = new long[count];
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            id += cursor.nextVarLong();
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    static int compareKeys(long chatroomA, byte[] termA, long chatroomB, byte[] termB) {
+        int result = Long.compare(chatroomA, chatroomB);
+        return result != 0 ? result : Arrays.compareUnsigned(termA, termB);
+    }
+
+    @FunctionalInterface
+    interface PostingConsumer {
+
+        void accept(long messageId, int frequency);
+    }
+
+    private class Cursor {
+
+        private long position;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        private long nextVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Writes a segment file. Terms must be added in key order; the file is only valid once
+     * {@link #finish} has written the header and forced it to disk.
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private final long seq;
+        private long position = HEADER_BYTES;
+        private int termCount;
+
+        Writer(Path path, long seq) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.seq = seq;
+            channel.position(HEADER_BYTES);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        }
+
+        void add(long chatroomId, byte[] term, long[] messageIds, int[] frequencies, int count) throws IOException {
+            long termOffset = position;
+            out.write(term);
+            position += term.length;
+            long postingsOffset = position;
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                writeVarLong(messageIds[i] - previous);
+                writeVarLong(frequencies[i]);
+                previous = messageIds[i];
+            }
+            indexOut.writeLong(chatroomId);
+            indexOut.writeLong(termOffset);
+            indexOut.writeInt(term.length);
+            indexOut.writeLong(postingsOffset);
+            indexOut.writeInt(count);
+            termCount++;
+        }
+
+        void finish(long[] deletedIds, long[] replacedIds) throws IOException {
+            long indexOffset = position;
+            index.writeTo(out);
+            position += index.size();
+            long idsOffset = position;
+            writeIds(deletedIds);
+            writeIds(replacedIds);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(seq).putInt(termCount).putLong(indexOffset)
+                    .putInt(deletedIds.length).putInt(replacedIds.length).putLong(idsOffset).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        // Sorted ascending
+        private void writeIds(long[] ids) throws IOException {
+            long previous = 0;
+            for (long id : ids) {
+                writeVarLong(id - previous);
+                previous = id;
+            }
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+                position++;
+            }
+            out.write((int) value);
+            position++;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -21,6 +22,9 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ChangeVersions changeVersions;
+
     @Override
     public UserDto createUser(UserDto userDto) {
         User user = new User();
@@ -48,9 +52,18 @@ public class UserServiceImpl implements UserService {
         }
         
         User updatedUser = userRepository.save(user);
+
+        // The profile is embedded in the user's chatrooms and in every message they sent
+        changeVersions.profileChanged(userId);
         return convertToDto(updatedUser);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<String> getUserTag(Long userId) {
+        return changeVersions.profileTag(userId);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Optional<UserDto> getUserById(Long userId) {
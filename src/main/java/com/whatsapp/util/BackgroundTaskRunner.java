@@ -0,0 +1,31 @@
+package com.whatsapp.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Future;
+
+/**
+ * Starts long-running background loops (flushers, persistence workers). They run on
+ * virtual threads when spring.threads.virtual.enabled is set, otherwise on daemon
+ * platform threads.
+ */
+@Component
+public class BackgroundTaskRunner {
+
+    private final SimpleAsyncTaskExecutor executor;
+
+    public BackgroundTaskRunner(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        executor = new SimpleAsyncTaskExecutor("background-");
+        executor.setVirtualThreads(virtualThreads);
+        executor.setDaemon(true);
+    }
+
+    public Future<?> start(String name, Runnable task) {
+        return executor.submit(() -> {
+            Thread.currentThread().setName(name);
+            task.run();
+        });
+    }
+}
@@ -0,0 +1,34 @@
+package com.whatsapp.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.util.Arrays;
+
+/**
+ * Turns a resource version into the ETag of the representation being served. The same
+ * version is sent as JSON or in the binary message format depending on Accept, so the
+ * Accept header is part of the tag and every tagged response, 304s included, varies by it.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String forRepresentation(String versionTag, ServletWebRequest request) {
+        HttpServletResponse response = request.getResponse();
+        if (response != null && response.getHeaders(HttpHeaders.VARY).stream()
+                .flatMap(vary -> Arrays.stream(vary.split(",")))
+                .noneMatch(name -> name.trim().equalsIgnoreCase(HttpHeaders.ACCEPT))) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isBlank() || accept.equals("*/*")) {
+            return versionTag;
+        }
+        String representation = Integer.toUnsignedString(accept.replace(" ", "").hashCode(), 36);
+        return versionTag.substring(0, versionTag.length() - 1) + "-" + representation + "\"";
+    }
+}
@@ -0,0 +1,46 @@
+package com.whatsapp.util;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size and serialization time of message payloads per wire format, so JSON and the binary
+ * format can be compared on real traffic.
+ */
+@Component
+public class PayloadStats {
+
+    private final ConcurrentHashMap<String, Totals> formats = new ConcurrentHashMap<>();
+
+    public void record(String format, long bytes, long nanos) {
+        Totals totals = formats.computeIfAbsent(format, f -> new Totals());
+        totals.responses.increment();
+        totals.bytes.add(bytes);
+        totals.nanos.add(nanos);
+    }
+
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        formats.forEach((format, totals) -> {
+            long responses = totals.responses.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("responses", responses);
+            stats.put("totalBytes", totals.bytes.sum());
+            stats.put("averageBytes", responses > 0 ? totals.bytes.sum() / responses : 0);
+            stats.put("averageSerializationMicros", responses > 0 ? totals.nanos.sum() / responses / 1000 : 0);
+            result.put(format, stats);
+        });
+        return result;
+    }
+
+    private static class Totals {
+
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
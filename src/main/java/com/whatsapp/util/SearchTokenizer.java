@@ -0,0 +1,36 @@
+package com.whatsapp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits text into search words: runs of letters and digits, lowercased. Query terms go
+ * through it for both engines, and the embedded engine indexes with it. For plain words
+ * this matches PostgreSQL's 'simple' configuration, but not for everything: PostgreSQL's
+ * parser keeps emails, URLs, host names, file paths and decimals as single tokens, which
+ * this splits at the punctuation. A word inside an email address or URL is therefore
+ * found by the embedded engine and not by PostgreSQL. Hyphenated words are indexed by
+ * PostgreSQL both whole and in parts, so their parts match alike.
+ */
+public final class SearchTokenizer {
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    private SearchTokenizer() {
+    }
+
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            words.add(matcher.group().toLowerCase(Locale.ROOT));
+        }
+        return words;
+    }
+}
@@ -0,0 +1,32 @@
+-- Runs after Hibernate has created or updated the tables (spring.jpa.defer-datasource-initialization).
+-- Statements must be idempotent: the script runs on every start.
+
+-- Full-text search: a tsvector kept in step with content by PostgreSQL on insert and edit, GIN-indexed.
+-- The 'simple' configuration lowercases without stemming or stop words, as messages mix languages.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', content)) STORED;
+CREATE INDEX IF NOT EXISTS idx_messages_content_tsv ON messages USING GIN (content_tsv);
+
+-- One-off backfills of columns Hibernate adds empty to existing rows; each is recorded here once it has run.
+CREATE TABLE IF NOT EXISTS schema_backfills (
+    name VARCHAR(100) PRIMARY KEY,
+    applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- message_count starts at 0 on existing chatrooms; count their messages once instead of waiting for the repair job
+UPDATE chatrooms c SET message_count = (SELECT COUNT(*) FROM messages m WHERE m.chatroom_id = c.id)
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfills WHERE name = 'chatrooms.message_count');
+INSERT INTO schema_backfills (name) VALUES ('chatrooms.message_count') ON CONFLICT DO NOTHING;
+
+-- The last_message_* preview columns start empty on existing chatrooms; fill them from each room's newest message once
+UPDATE chatrooms c SET (last_message_id, last_message_preview, last_message_sender_id, last_message_at) =
+    (SELECT m.id, LEFT(m.content, 100), m.sender_id, m.created_at FROM messages m
+     WHERE m.chatroom_id = c.id ORDER BY m.id DESC LIMIT 1)
+    WHERE c.last_message_id IS NULL
+      AND EXISTS (SELECT 1 FROM messages m WHERE m.chatroom_id = c.id)
+      AND NOT EXISTS (SELECT 1 FROM schema_backfills WHERE name = 'chatrooms.last_message');
+INSERT INTO schema_backfills (name) VALUES ('chatrooms.last_message') ON CONFLICT DO NOTHING;
+
+-- Per-chatroom sequence numbers were dropped: messages are ordered and synced by their time-ordered IDs
+ALTER TABLE messages DROP COLUMN IF EXISTS seq;
+ALTER TABLE chatrooms DROP COLUMN IF EXISTS seq_leased;
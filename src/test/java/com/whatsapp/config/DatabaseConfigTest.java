@@ -0,0 +1,22 @@
+package com.whatsapp.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DatabaseConfigTest {
+
+    @Test
+    void theConcurrencyLimitLeavesTheReserveOfThePool() {
+        assertThat(DatabaseConfig.concurrencyLimit(-1, 10, 2)).isEqualTo(8);
+        assertThat(DatabaseConfig.concurrencyLimit(10, 10, 2)).isEqualTo(8);
+        assertThat(DatabaseConfig.concurrencyLimit(5, 10, 2)).isEqualTo(5);
+        assertThat(DatabaseConfig.concurrencyLimit(-1, 2, 2)).isEqualTo(1);
+    }
+
+    @Test
+    void withoutAKnownPoolOnlyAnExplicitLimitApplies() {
+        assertThat(DatabaseConfig.concurrencyLimit(12, 0, 2)).isEqualTo(12);
+        assertThat(DatabaseConfig.concurrencyLimit(-1, 0, 2)).isZero();
+    }
+}
@@ -0,0 +1,187 @@
+package com.whatsapp.config;
+
+import com.whatsapp.dto.AttachmentDto;
+import com.whatsapp.dto.MessageChangeDto;
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.dto.SyncResponse;
+import com.whatsapp.dto.UserDto;
+import com.whatsapp.model.Attachment;
+import com.whatsapp.model.Message;
+import com.whatsapp.model.MessageChange;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the layout documented on {@link MessageBinaryHttpMessageConverter}, written from
+ * that description rather than from the encoder, as a client would.
+ */
+class MessageBinaryDecoder {
+
+    private final byte[] bytes;
+    private final List<String> strings = new ArrayList<>();
+    private int position;
+    private long previousId;
+    private long previousChatroomId;
+    private long previousMillis;
+
+    private MessageBinaryDecoder(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    static Object decode(byte[] bytes) {
+        MessageBinaryDecoder decoder = new MessageBinaryDecoder(bytes);
+        if (decoder.readByte() != 1) {
+            throw new IllegalArgumentException("Unknown version");
+        }
+        int kind = decoder.readByte();
+        Object body = switch (kind) {
+            case 1 -> decoder.readMessages().get(0);
+            case 2 -> decoder.readMessages();
+            case 3 -> {
+                MessageHistoryDto history = new MessageHistoryDto();
+                history.setMessages(decoder.readMessages());
+                history.setBeforeCursor(decoder.readNullableId());
+                history.setAfterCursor(decoder.readNullableId());
+                yield history;
+            }
+            case 4 -> {
+                SyncResponse sync = new SyncResponse();
+                sync.setMessages(decoder.readMessages());
+                sync.setChanges(decoder.readChanges());
+                sync.setWatermark(decoder.readNullableId());
+                int flags = decoder.readByte();
+                sync.setHasMore((flags & 1) != 0);
+                sync.setResyncRequired((flags & 2) != 0);
+                yield sync;
+            }
+            default -> throw new IllegalArgumentException("Unknown kind " + kind);
+        };
+        if (decoder.position != bytes.length) {
+            throw new IllegalArgumentException("Trailing bytes after the body");
+        }
+        return body;
+    }
+
+    private List<MessageDto> readMessages() {
+        int count = (int) readVarLong();
+        List<MessageDto> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int flags = readByte();
+            MessageDto message = new MessageDto();
+            message.setMessageType(Message.MessageType.values()[readByte()]);
+            previousId += readSignedVarLong();
+            message.setId(previousId);
+            previousChatroomId += readSignedVarLong();
+            message.setChatroomId(previousChatroomId);
+            message.setContent(readString());
+
+            UserDto sender = new UserDto();
+            sender.setId(readVarLong());
+            sender.setUsername(readTableString());
+            sender.setAvatarUrl(readTableString());
+            message.setSender(sender);
+
+            previousMillis += readSignedVarLong();
+            message.setCreatedAt(timestamp(previousMillis));
+            if ((flags & 2) != 0) {
+                message.setUpdatedAt(timestamp(previousMillis + readSignedVarLong()));
+            }
+
+            if ((flags & 4) != 0) {
+                int attachmentCount = (int) readVarLong();
+                List<AttachmentDto> attachments = new ArrayList<>(attachmentCount);
+                for (int j = 0; j < attachmentCount; j++) {
+                    AttachmentDto attachment = new AttachmentDto();
+                    attachment.setId(readVarLong());
+                    attachment.setAttachmentType(Attachment.AttachmentType.values()[readByte()]);
+                    attachment.setFileName(readString());
+                    attachment.setFilePath(readString());
+                    attachment.setFileType(readTableString());
+                    attachment.setFileSize(readVarLong());
+                    attachments.add(attachment);
+                }
+                message.setAttachments(attachments);
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private List<MessageChangeDto> readChanges() {
+        int count = (int) readVarLong();
+        List<MessageChangeDto> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MessageChangeDto change = new MessageChangeDto();
+            change.setChangeType(MessageChange.ChangeType.values()[readByte()]);
+            previousId += readSignedVarLong();
+            change.setId(previousId);
+            change.setMessageId(previousId + readSignedVarLong());
+            previousChatroomId += readSignedVarLong();
+            change.setChatroomId(previousChatroomId);
+            change.setContent(readString());
+            previousMillis += readSignedVarLong();
+            change.setChangedAt(timestamp(previousMillis));
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    private Long readNullableId() {
+        long value = readVarLong();
+        return value == 0 ? null : value - 1;
+    }
+
+    private String readString() {
+        int length = (int) readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        String value = new String(bytes, position, length - 1, StandardCharsets.UTF_8);
+        position += length - 1;
+        return value;
+    }
+
+    private String readTableString() {
+        long marker = readVarLong();
+        if (marker == 0) {
+            return null;
+        }
+        if (marker == 1) {
+            String value = readString();
+            strings.add(value);
+            return value;
+        }
+        return strings.get((int) (marker - 2));
+    }
+
+    private long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private int readByte() {
+        return bytes[position++] & 0xFF;
+    }
+
+    private static LocalDateTime timestamp(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
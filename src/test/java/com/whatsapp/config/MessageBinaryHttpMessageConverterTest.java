@@ -0,0 +1,152 @@
+package com.whatsapp.config;
+
+import com.whatsapp.dto.AttachmentDto;
+import com.whatsapp.dto.MessageChangeDto;
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.dto.SyncResponse;
+import com.whatsapp.dto.UserDto;
+import com.whatsapp.model.Attachment;
+import com.whatsapp.model.Message;
+import com.whatsapp.model.MessageChange;
+import com.whatsapp.util.PayloadStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class MessageBinaryHttpMessageConverterTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 250_000_000);
+
+    private final MessageBinaryHttpMessageConverter converter = new MessageBinaryHttpMessageConverter(new PayloadStats());
+
+    @Test
+    void aSingleTextMessageHasTheDocumentedLayout() throws IOException {
+        MessageDto message = message(300L, 2L, "hi", sender(5L, "al", null));
+        message.setCreatedAt(LocalDateTime.of(1970, 1, 1, 0, 0, 0, 1_000_000));
+
+        assertThat(write(message, MessageDto.class)).containsExactly(
+                1, 1,                 // version, kind: single message
+                1,                    // message count
+                0, 0,                 // flags (no edit or attachments), type TEXT
+                0xD8, 0x04,           // id 300, zigzag delta from 0
+                4,                    // chatroom 2, zigzag delta
+                3, 'h', 'i',          // content, length + 1
+                5,                    // sender ID
+                1, 3, 'a', 'l',       // username: new table string
+                0,                    // no avatar
+                2);                   // created at 1 ms, zigzag delta
+    }
+
+    @Test
+    void historyRoundTripsThroughTheDocumentedLayout() throws IOException {
+        UserDto alice = sender(7L, "alice", "https://cdn/alice.png");
+        UserDto bob = sender(8L, "bob", null);
+        MessageDto first = message(1_000_000_000_000L, 42L, "hello", alice);
+        MessageDto second = message(1_000_000_000_500L, 42L, "héllo again, ünïcode ✓", bob);
+        second.setCreatedAt(NOW.minusSeconds(30));
+        second.setUpdatedAt(NOW);
+        MessageDto third = message(1_000_000_000_400L, 42L, null, alice);
+        third.setMessageType(Message.MessageType.IMAGE);
+        third.setAttachments(List.of(attachment(9L, "photo.jpg"), attachment(10L, "photo2.jpg")));
+
+        MessageHistoryDto history = new MessageHistoryDto();
+        history.setMessages(List.of(first, second, third));
+        history.setBeforeCursor(0L);
+        history.setAfterCursor(null);
+
+        MessageHistoryDto decoded = (MessageHistoryDto) MessageBinaryDecoder.decode(write(history, MessageHistoryDto.class));
+
+        // Senders carry ID, username and avatar only; attachments omit their message and timestamp
+        assertThat(decoded).usingRecursiveComparison()
+                .ignoringFields("messages.sender.bio", "messages.sender.createdAt", "messages.sender.updatedAt",
+                        "messages.attachments.messageId", "messages.attachments.createdAt", "messages.reactions")
+                .isEqualTo(history);
+        assertThat(decoded.getBeforeCursor()).isZero();
+        assertThat(decoded.getAfterCursor()).isNull();
+    }
+
+    @Test
+    void syncAndMessageListsRoundTrip() throws IOException {
+        MessageDto message = message(2_000L, 3L, "new", sender(1L, "carol", null));
+        MessageChangeDto edit = new MessageChangeDto();
+        edit.setId(2_100L);
+        edit.setMessageId(1_500L);
+        edit.setChatroomId(1L);
+        edit.setChangeType(MessageChange.ChangeType.EDITED);
+        edit.setContent("edited");
+        edit.setChangedAt(NOW.plusSeconds(1));
+        MessageChangeDto deletion = new MessageChangeDto();
+        deletion.setId(2_050L);
+        deletion.setMessageId(1_900L);
+        deletion.setChatroomId(3L);
+        deletion.setChangeType(MessageChange.ChangeType.DELETED);
+        deletion.setChangedAt(NOW.minusDays(1));
+
+        SyncResponse sync = new SyncResponse();
+        sync.setMessages(List.of(message));
+        sync.setChanges(List.of(edit, deletion));
+        sync.setWatermark(2_100L);
+        sync.setHasMore(false);
+        sync.setResyncRequired(true);
+
+        Object decodedSync = MessageBinaryDecoder.decode(write(sync, SyncResponse.class));
+        assertThat(decodedSync).usingRecursiveComparison()
+                .ignoringFields("messages.sender.bio", "messages.sender.createdAt", "messages.sender.updatedAt",
+                        "messages.reactions", "messages.attachments")
+                .isEqualTo(sync);
+
+        List<MessageDto> list = List.of(message, message(1_999L, 3L, "older", sender(1L, "carol", null)));
+        byte[] listBytes = write(list, new ParameterizedTypeReference<List<MessageDto>>() { }.getType());
+        assertThat(listBytes[1]).isEqualTo((byte) 2);
+        assertThat(MessageBinaryDecoder.decode(listBytes)).asList()
+                .extracting("id", "content").containsExactly(
+                        tuple(2_000L, "new"),
+                        tuple(1_999L, "older"));
+    }
+
+    private byte[] write(Object body, Type type) throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(body, type, MessageBinaryHttpMessageConverter.MEDIA_TYPE, output);
+        assertThat(output.getHeaders().getContentLength()).isEqualTo(output.getBodyAsBytes().length);
+        return output.getBodyAsBytes();
+    }
+
+    private static MessageDto message(long id, long chatroomId, String content, UserDto sender) {
+        MessageDto message = new MessageDto();
+        message.setId(id);
+        message.setChatroomId(chatroomId);
+        message.setContent(content);
+        message.setMessageType(Message.MessageType.TEXT);
+        message.setSender(sender);
+        message.setCreatedAt(NOW);
+        return message;
+    }
+
+    private static UserDto sender(long id, String username, String avatarUrl) {
+        UserDto sender = new UserDto();
+        sender.setId(id);
+        sender.setUsername(username);
+        sender.setAvatarUrl(avatarUrl);
+        return sender;
+    }
+
+    private static AttachmentDto attachment(long id, String fileName) {
+        AttachmentDto attachment = new AttachmentDto();
+        attachment.setId(id);
+        attachment.setFileName(fileName);
+        attachment.setFilePath("/uploads/" + fileName);
+        attachment.setFileType("image/jpeg");
+        attachment.setFileSize(123_456L);
+        attachment.setAttachmentType(Attachment.AttachmentType.IMAGE);
+        return attachment;
+    }
+}
@@ -0,0 +1,76 @@
+package com.whatsapp.controller;
+
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.impl.ChatroomCounters;
+import com.whatsapp.service.impl.TestUsers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+@WithMockUser
+class ChatroomControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private ChatroomCounters chatroomCounters;
+
+    @Test
+    void markReadAcknowledgesInAWritableTransaction() throws Exception {
+        User reader = userRepository.save(TestUsers.user("read-a-" + System.nanoTime()));
+        User other = userRepository.save(TestUsers.user("read-b-" + System.nanoTime()));
+        Chatroom chatroom = chatroomRepository.save(new Chatroom(reader, other));
+
+        // H2 ignores read-only connections, so check the transaction the write runs in
+        List<Boolean> readOnly = new ArrayList<>();
+        doAnswer(invocation -> {
+            readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            return invocation.callRealMethod();
+        }).when(chatroomCounters).acknowledge(anyLong(), anyBoolean(), anyLong(), anyLong());
+
+        mockMvc.perform(post("/chatrooms/{chatroomId}/read", chatroom.getId())
+                        .param("userId", reader.getId().toString())
+                        .param("messageId", "42"))
+                .andExpect(status().isNoContent());
+
+        assertThat(readOnly).containsExactly(false);
+        Long readUpto = jdbcTemplate.queryForObject(
+                "SELECT user1_read_upto FROM chatrooms WHERE id = ?", Long.class, chatroom.getId());
+        assertThat(readUpto).isEqualTo(42L);
+    }
+}
@@ -0,0 +1,134 @@
+package com.whatsapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import com.whatsapp.service.impl.TestUsers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+@WithMockUser
+class MessageControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void anUnknownChatroomIsNotFoundEvenWithATag() throws Exception {
+        mockMvc.perform(get("/messages/chatroom/{chatroomId}", Long.MAX_VALUE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void tagsFollowThePersistedVersionAndTheRepresentation() throws Exception {
+        User user1 = userRepository.save(TestUsers.user("etag-a-" + System.nanoTime()));
+        User user2 = userRepository.save(TestUsers.user("etag-b-" + System.nanoTime()));
+        Chatroom chatroom = chatroomRepository.save(new Chatroom(user1, user2));
+
+        String etag = mockMvc.perform(get("/messages/chatroom/{chatroomId}", chatroom.getId())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/messages/chatroom/{chatroomId}", chatroom.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)));
+
+        // Another representation of the same version carries its own tag
+        String binaryTag = mockMvc.perform(get("/messages/chatroom/{chatroomId}/history", chatroom.getId())
+                        .accept("application/vnd.whatsapp.messages")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(binaryTag).isNotEqualTo(etag);
+
+        // A write made through another instance moves the version stored with the room
+        jdbcTemplate.update("UPDATE chatrooms SET content_version = content_version + 1 WHERE id = ?", chatroom.getId());
+        mockMvc.perform(get("/messages/chatroom/{chatroomId}", chatroom.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void exportStreamsEveryMessageOldestFirstAsOneJsonLineEach() throws Exception {
+        User user1 = userRepository.save(TestUsers.user("export-a-" + System.nanoTime()));
+        User user2 = userRepository.save(TestUsers.user("export-b-" + System.nanoTime()));
+        Chatroom chatroom = chatroomRepository.save(new Chatroom(user1, user2));
+        List<Long> sent = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sent.add(messageService.sendTextMessage(chatroom.getId(), i % 2 == 0 ? user1.getId() : user2.getId(),
+                    "line " + i, null).getId());
+        }
+
+        MvcResult started = mockMvc.perform(get("/messages/chatroom/{chatroomId}/export", chatroom.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = body.lines().toList();
+        assertThat(lines).hasSize(3);
+        for (int i = 0; i < lines.size(); i++) {
+            JsonNode message = objectMapper.readTree(lines.get(i));
+            assertThat(message.get("id").asText()).isEqualTo(sent.get(i).toString());
+            assertThat(message.get("content").asText()).isEqualTo("line " + i);
+        }
+    }
+
+    @Test
+    void exportOfAnUnknownChatroomFailsBeforeStreaming() throws Exception {
+        mockMvc.perform(get("/messages/chatroom/{chatroomId}/export", Long.MAX_VALUE))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest());
+    }
+}
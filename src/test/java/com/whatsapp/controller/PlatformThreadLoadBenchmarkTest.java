@@ -0,0 +1,19 @@
+package com.whatsapp.controller;
+
+import org.junit.jupiter.api.Tag;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * {@link RequestLoadBenchmark} on Tomcat's platform-thread pool.
+ * Tagged so it only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+@Import(RequestLoadBenchmark.OpenMessageEndpoints.class)
+class PlatformThreadLoadBenchmarkTest extends RequestLoadBenchmark {
+}
@@ -0,0 +1,175 @@
+package com.whatsapp.controller;
+
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.impl.TestUsers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives sendTextMessage and getChatroomMessages over HTTP from many concurrent connections and
+ * logs requests per second and latency percentiles for each. The subclasses run it on Tomcat's
+ * platform-thread pool and in the virtual-threads profile; compare their log lines. Against the
+ * in-memory test database it mostly measures request handling; point it at PostgreSQL and raise
+ * -Dbenchmark.connections for numbers worth comparing.
+ */
+abstract class RequestLoadBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestLoadBenchmark.class);
+
+    private static final int CONNECTIONS = Integer.getInteger("benchmark.connections", 400);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 5);
+    private static final int CHATROOMS = 16;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    private final List<long[]> rooms = new ArrayList<>();
+
+    @BeforeEach
+    void createChatrooms() {
+        for (int i = 0; i < CHATROOMS; i++) {
+            User sender = userRepository.save(TestUsers.user("load-a-" + i + "-" + System.nanoTime()));
+            User recipient = userRepository.save(TestUsers.user("load-b-" + i + "-" + System.nanoTime()));
+            Chatroom chatroom = chatroomRepository.save(new Chatroom(sender, recipient));
+            rooms.add(new long[]{chatroom.getId(), sender.getId()});
+        }
+    }
+
+    @Test
+    void sendAndReadUnderLoad() throws Exception {
+        int requests = CONNECTIONS * ROUNDS;
+        long[] sendLatencies = new long[requests];
+        long[] readLatencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        // Warm up on one connection first: the dispatcher servlet initializes on the first request
+        for (long[] room : rooms) {
+            timed(client, sendRequest(room, "warm up"), 201, failures);
+            timed(client, readRequest(room), 200, failures);
+        }
+
+        ExecutorService connections = Executors.newFixedThreadPool(CONNECTIONS);
+        List<Future<?>> futures = new ArrayList<>(CONNECTIONS);
+        long start = System.nanoTime();
+        for (int c = 0; c < CONNECTIONS; c++) {
+            int connection = c;
+            long[] room = rooms.get(c % CHATROOMS);
+            futures.add(connections.submit(() -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                    int index = connection * ROUNDS + round;
+                    sendLatencies[index] = timed(client, sendRequest(room, "load " + index), 201, failures);
+                    readLatencies[index] = timed(client, readRequest(room), 200, failures);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - start;
+        connections.shutdown();
+
+        log("sendTextMessage", sendLatencies, elapsed);
+        log("getChatroomMessages", readLatencies, elapsed);
+        assertThat(failures.get()).as("failed requests").isZero();
+    }
+
+    private HttpRequest.Builder sendRequest(long[] room, String content) {
+        return HttpRequest.newBuilder(uri("/messages/text?chatroomId=" + room[0] + "&senderId=" + room[1]
+                + "&content=" + URLEncoder.encode(content, StandardCharsets.UTF_8))).POST(HttpRequest.BodyPublishers.noBody());
+    }
+
+    private HttpRequest.Builder readRequest(long[] room) {
+        return HttpRequest.newBuilder(uri("/messages/chatroom/" + room[0] + "?size=20")).GET();
+    }
+
+    private long timed(HttpClient client, HttpRequest.Builder request, int expectedStatus, AtomicInteger failures) {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(60)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != expectedStatus && failures.getAndIncrement() == 0) {
+                logger.error("{} answered {}: {}", response.uri(), response.statusCode(), response.body());
+            }
+        } catch (Exception e) {
+            if (failures.getAndIncrement() == 0) {
+                logger.error("Request failed", e);
+            }
+        }
+        return System.nanoTime() - started;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + contextPath + path);
+    }
+
+    private void log(String endpoint, long[] latencies, long elapsed) {
+        Arrays.sort(latencies);
+        int count = latencies.length;
+        logger.info("{} ({}): {} requests over {} connections, {} requests/s, latency p50 {} ms, p99 {} ms, max {} ms",
+                endpoint, getClass().getSimpleName(), count, CONNECTIONS,
+                String.format("%.0f", count / (elapsed / 1e9)),
+                TimeUnit.NANOSECONDS.toMillis(latencies[count / 2]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[count * 99 / 100]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[count - 1]));
+    }
+
+    // The application has no login mechanism a plain HTTP client could use; open the message endpoints for the run
+    @TestConfiguration
+    static class OpenMessageEndpoints {
+
+        @Bean
+        @Order(Ordered.HIGHEST_PRECEDENCE)
+        SecurityFilterChain openMessageEndpoints(HttpSecurity http) throws Exception {
+            return http.securityMatcher("/messages/**")
+                    .csrf(AbstractHttpConfigurer::disable)
+                    .authorizeHttpRequests(authz -> authz.anyRequest().permitAll())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.whatsapp.controller;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * {@link RequestLoadBenchmark} in the virtual-threads profile, with database access capped by
+ * permits. Needs a Java 21 runtime: {@code mvn test -Pbenchmark,java21}.
+ */
+@Tag("benchmark")
+@EnabledForJreRange(min = JRE.JAVA_21)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase
+@ActiveProfiles({"test", "virtual-threads"})
+@Import(RequestLoadBenchmark.OpenMessageEndpoints.class)
+class VirtualThreadLoadBenchmarkTest extends RequestLoadBenchmark {
+}
@@ -0,0 +1,42 @@
+package com.whatsapp.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Message IDs exceed 2^53, the largest integer a JavaScript number holds exactly, so they
+ * must reach clients as strings and still be accepted back as numbers or strings.
+ */
+class MessageIdJsonTest {
+
+    private static final long ID = (1L << 60) + 1;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void messageIdsAndCursorsAreWrittenAsStrings() throws Exception {
+        MessageDto message = new MessageDto(ID, "hello", Message.MessageType.TEXT, null, 7L, LocalDateTime.now(), null);
+        MessageHistoryDto history = new MessageHistoryDto(List.of(message), ID - 1, null);
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(history));
+
+        assertThat(json.get("messages").get(0).get("id").textValue()).isEqualTo(Long.toString(ID));
+        assertThat(json.get("messages").get(0).get("chatroomId").isNumber()).isTrue();
+        assertThat(json.get("beforeCursor").textValue()).isEqualTo(Long.toString(ID - 1));
+        assertThat(json.get("afterCursor").isNull()).isTrue();
+    }
+
+    @Test
+    void stringIdsAreReadBack() throws Exception {
+        MessageDto message = objectMapper.readValue("{\"id\":\"" + ID + "\",\"content\":\"hi\"}", MessageDto.class);
+
+        assertThat(message.getId()).isEqualTo(ID);
+    }
+}
@@ -0,0 +1,80 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.UserDto;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.ChatroomService;
+import com.whatsapp.service.MessageService;
+import com.whatsapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class ChangeVersionsTest {
+
+    @Autowired
+    private ChangeVersions changeVersions;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private ChatroomService chatroomService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User author;
+    private User reader;
+    private Chatroom chatroom;
+
+    @BeforeEach
+    void createChatroom() {
+        author = userRepository.save(TestUsers.user("versions-a-" + System.nanoTime()));
+        reader = userRepository.save(TestUsers.user("versions-b-" + System.nanoTime()));
+        chatroom = chatroomRepository.save(new Chatroom(author, reader));
+    }
+
+    @Test
+    void aProfileChangeMovesTheTagsOfThePartnersRoomsWithoutWritingThem() {
+        String roomTag = messageService.getChatroomMessagesTag(chatroom.getId()).orElseThrow();
+        String listTag = chatroomService.getUserChatroomsTag(reader.getId()).orElseThrow();
+        long version = changeVersions.chatroomContentVersion(chatroom.getId());
+
+        UserDto update = new UserDto();
+        update.setBio("new bio");
+        userService.updateUser(author.getId(), update);
+
+        assertThat(messageService.getChatroomMessagesTag(chatroom.getId())).get().isNotEqualTo(roomTag);
+        assertThat(chatroomService.getUserChatroomsTag(reader.getId())).get().isNotEqualTo(listTag);
+        assertThat(changeVersions.chatroomContentVersion(chatroom.getId())).isGreaterThan(version);
+        assertThat(jdbcTemplate.queryForObject("SELECT content_version FROM chatrooms WHERE id = ?", Long.class, chatroom.getId()))
+                .isZero();
+    }
+
+    @Test
+    void missingResourcesHaveNoTag() {
+        assertThat(messageService.getChatroomMessagesTag(-1L)).isEmpty();
+        assertThat(changeVersions.chatroomContentVersion(-1L)).isEqualTo(-1);
+    }
+}
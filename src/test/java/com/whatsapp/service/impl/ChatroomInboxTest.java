@@ -0,0 +1,64 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.InboxEntryDto;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.ChatroomService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The tracker never flushes here, so its activity stays pending
+@SpringBootTest(properties = "app.chatroom.activity.flush-interval-ms=3600000")
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class ChatroomInboxTest {
+
+    @Autowired
+    private ChatroomService chatroomService;
+
+    @Autowired
+    private ChatroomActivityTracker chatroomActivityTracker;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Test
+    void pendingActivityMovesARoomUpWithoutRepeatingOrDroppingRooms() {
+        User owner = userRepository.save(TestUsers.user("inbox-" + System.nanoTime()));
+        List<Long> oldestFirst = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            User other = userRepository.save(TestUsers.user("inbox-" + i + "-" + System.nanoTime()));
+            oldestFirst.add(chatroomRepository.save(new Chatroom(owner, other)).getId());
+        }
+        Chatroom oldest = chatroomRepository.findById(oldestFirst.get(0)).orElseThrow();
+        chatroomActivityTracker.recordMessage(oldest.getId(), owner.getId(), oldest.getUser2().getId(),
+                1L, owner.getId(), "back on top", LocalDateTime.now().plusMinutes(1));
+
+        List<Long> firstPage = chatroomIds(chatroomService.getInbox(owner.getId(), PageRequest.of(0, 2)));
+        List<Long> secondPage = chatroomIds(chatroomService.getInbox(owner.getId(), PageRequest.of(1, 2)));
+
+        assertThat(firstPage).containsExactly(oldestFirst.get(0), oldestFirst.get(3));
+        assertThat(secondPage).containsExactly(oldestFirst.get(2), oldestFirst.get(1));
+        assertThat(chatroomService.getInbox(owner.getId(), PageRequest.of(0, 2)).get(0).getLastMessagePreview())
+                .isEqualTo("back on top");
+    }
+
+    private static List<Long> chatroomIds(List<InboxEntryDto> entries) {
+        return entries.stream().map(InboxEntryDto::getChatroomId).toList();
+    }
+}
@@ -0,0 +1,72 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.repository.ChatroomRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatroomMembershipCacheTest {
+
+    @Mock
+    private ChatroomRepository chatroomRepository;
+
+    @InjectMocks
+    private ChatroomMembershipCache membershipCache;
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(membershipCache, "maxEntries", 1000);
+    }
+
+    @Test
+    void lookupsAreServedFromTheTableAfterOneLoad() {
+        when(chatroomRepository.findParticipantIds(7L)).thenReturn(List.<Object[]>of(new Object[]{10L, 20L}));
+
+        assertThat(membershipCache.isMember(7L, 10L)).isTrue();
+        assertThat(membershipCache.isMember(7L, 30L)).isFalse();
+        assertThat(membershipCache.getOtherParticipant(7L, 10L)).isEqualTo(20L);
+        assertThat(membershipCache.getOtherParticipant(7L, 20L)).isEqualTo(10L);
+        assertThatThrownBy(() -> membershipCache.checkMember(7L, 30L)).hasMessageContaining("not part");
+        verify(chatroomRepository, times(1)).findParticipantIds(7L);
+    }
+
+    @Test
+    void aLoadRacingARemovalIsNotInstalled() {
+        when(chatroomRepository.findParticipantIds(7L)).thenAnswer(invocation -> {
+            // The room is deleted while its participants are being read
+            membershipCache.remove(7L);
+            return List.<Object[]>of(new Object[]{10L, 20L});
+        }).thenReturn(List.of());
+
+        assertThat(membershipCache.getUser1Id(7L)).isEqualTo(10L);
+        assertThatThrownBy(() -> membershipCache.checkExists(7L)).hasMessageContaining("not found");
+    }
+
+    @Test
+    void entriesSurviveRemovalOfTheirNeighbours() {
+        for (long chatroomId = 1; chatroomId <= 200; chatroomId++) {
+            membershipCache.put(chatroomId, chatroomId * 10, chatroomId * 10 + 1);
+        }
+        for (long chatroomId = 1; chatroomId <= 200; chatroomId += 2) {
+            membershipCache.remove(chatroomId);
+        }
+
+        for (long chatroomId = 2; chatroomId <= 200; chatroomId += 2) {
+            assertThat(membershipCache.getUser1Id(chatroomId)).isEqualTo(chatroomId * 10);
+            assertThat(membershipCache.getUser2Id(chatroomId)).isEqualTo(chatroomId * 10 + 1);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.model.MessageChange;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageChangeRepository;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.util.BackgroundTaskRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+// Drives the tail by hand: the tail loop never starts, and merges run inline when the tail triggers them
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EmbeddedMessageSearchEngineTest {
+
+    private static final long ROOM = 1L;
+
+    @TempDir
+    Path indexDir;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MessageChangeRepository messageChangeRepository;
+
+    @Mock
+    private ChatroomRepository chatroomRepository;
+
+    @Mock
+    private MessageChangeLog messageChangeLog;
+
+    @Mock
+    private BackgroundTaskRunner backgroundTaskRunner;
+
+    private final List<Object[]> pendingMessages = new ArrayList<>();
+    private final List<MessageChange> pendingChanges = new ArrayList<>();
+    private long nextChangeId = 1_000;
+
+    @BeforeEach
+    void stubSources() {
+        when(messageRepository.findContentBetween(anyLong(), anyLong(), any())).thenAnswer(invocation -> drain(pendingMessages));
+        when(messageChangeRepository.findBetween(anyLong(), anyLong(), any())).thenAnswer(invocation -> drain(pendingChanges));
+        when(messageChangeLog.retentionFloor()).thenReturn(0L);
+        when(backgroundTaskRunner.start(eq("search-index-tail"), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(backgroundTaskRunner.start(eq("search-index-merge"), any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Test
+    void editsAndDeletesSurviveFlushesANonOldestMergeAndAReopen() throws Exception {
+        EmbeddedMessageSearchEngine engine = openEngine();
+
+        // A large first segment, so the cheapest run to merge is the newer ones after it
+        for (long id = 1; id <= 50; id++) {
+            message(id, "filler text number " + id + " for the oldest segment");
+        }
+        message(101, "apple pie");
+        message(102, "banana split");
+        tail(engine);
+        message(103, "cherry tart");
+        tail(engine);
+        change(101, MessageChange.ChangeType.EDITED, "grape pie");
+        tail(engine);
+        change(102, MessageChange.ChangeType.DELETED, null);
+        tail(engine);
+
+        List<SearchSegment> segments = segments(engine);
+        assertThat(segments).hasSize(2);
+        assertThat(segments.get(0).seq()).isEqualTo(1);
+        assertSearchResults(engine);
+
+        engine.close();
+        EmbeddedMessageSearchEngine reopened = openEngine();
+        assertThat(segments(reopened)).hasSize(2);
+        assertSearchResults(reopened);
+        reopened.close();
+    }
+
+    private void assertSearchResults(EmbeddedMessageSearchEngine engine) {
+        assertThat(engine.search(ROOM, List.of("grape"), 0, 10)).containsExactly(101L);
+        assertThat(engine.search(ROOM, List.of("pie"), 0, 10)).containsExactly(101L);
+        assertThat(engine.search(ROOM, List.of("apple"), 0, 10)).isEmpty();
+        assertThat(engine.search(ROOM, List.of("banana"), 0, 10)).isEmpty();
+        assertThat(engine.search(ROOM, List.of("cher"), 0, 10)).containsExactly(103L);
+        assertThat(engine.search(ROOM, List.of("filler", "oldest"), 0, 100)).hasSize(50);
+    }
+
+    private EmbeddedMessageSearchEngine openEngine() throws Exception {
+        EmbeddedMessageSearchEngine engine = new EmbeddedMessageSearchEngine();
+        ReflectionTestUtils.setField(engine, "messageRepository", messageRepository);
+        ReflectionTestUtils.setField(engine, "messageChangeRepository", messageChangeRepository);
+        ReflectionTestUtils.setField(engine, "chatroomRepository", chatroomRepository);
+        ReflectionTestUtils.setField(engine, "messageChangeLog", messageChangeLog);
+        ReflectionTestUtils.setField(engine, "backgroundTaskRunner", backgroundTaskRunner);
+        ReflectionTestUtils.setField(engine, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(engine, "batchSize", 1000);
+        // Every tail writes a segment, and a third segment triggers a merge of two
+        ReflectionTestUtils.setField(engine, "flushDocs", 1);
+        ReflectionTestUtils.setField(engine, "flushIntervalMs", 0L);
+        ReflectionTestUtils.setField(engine, "maxSegments", 2);
+        ReflectionTestUtils.setField(engine, "mergeFactor", 2);
+        ReflectionTestUtils.setField(engine, "fanOutParallelism", 1);
+        ReflectionTestUtils.setField(engine, "commitGraceMs", 0L);
+        engine.open();
+        return engine;
+    }
+
+    private static void tail(EmbeddedMessageSearchEngine engine) {
+        ReflectionTestUtils.invokeMethod(engine, "tail");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SearchSegment> segments(EmbeddedMessageSearchEngine engine) {
+        return (List<SearchSegment>) ReflectionTestUtils.getField(engine, "segments");
+    }
+
+    private void message(long id, String content) {
+        pendingMessages.add(new Object[]{id, ROOM, content});
+    }
+
+    private void change(long messageId, MessageChange.ChangeType type, String content) {
+        MessageChange change = new MessageChange(messageId, ROOM, type, content);
+        change.setId(nextChangeId++);
+        pendingChanges.add(change);
+    }
+
+    private static <T> List<T> drain(List<T> pending) {
+        List<T> batch = new ArrayList<>(pending);
+        pending.clear();
+        return batch;
+    }
+}
@@ -0,0 +1,74 @@
+package com.whatsapp.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryPageCacheTest {
+
+    private static final HistoryPageCache.Key KEY = new HistoryPageCache.Key(1L, 100L, 50, "application/json", false);
+
+    @Mock
+    private ChangeVersions changeVersions;
+
+    @InjectMocks
+    private HistoryPageCache cache;
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(cache, "maxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+    }
+
+    @Test
+    void aPageIsDroppedOnceThePersistedVersionMoves() {
+        cache.put(KEY, page(3L, System.currentTimeMillis()));
+        assertThat(cache.get(KEY, 3L)).isNotNull();
+
+        // Bumped by a write on another instance
+        assertThat(cache.get(KEY, 4L)).isNull();
+        assertThat(cache.get(KEY, 3L)).isNull();
+    }
+
+    @Test
+    void theCacheReadsNoVersionsItself() {
+        cache.put(KEY, page(3L, System.currentTimeMillis()));
+        cache.get(KEY, 3L);
+
+        verifyNoInteractions(changeVersions);
+    }
+
+    @Test
+    void aPageBuiltAtAnOlderVersionDoesNotReplaceANewerOne() {
+        cache.put(KEY, page(4L, System.currentTimeMillis()));
+        cache.put(KEY, page(3L, System.currentTimeMillis()));
+
+        assertThat(cache.get(KEY, 4L)).isNotNull();
+    }
+
+    @Test
+    void pagesExpireAfterTheTtl() {
+        cache.put(KEY, page(3L, System.currentTimeMillis() - 120_000));
+
+        assertThat(cache.get(KEY, 3L)).isNull();
+    }
+
+    @Test
+    void pagesOfAMissingChatroomAreNotStored() {
+        cache.put(KEY, page(-1L, System.currentTimeMillis()));
+
+        assertThat(cache.snapshot()).containsEntry("pages", 0);
+    }
+
+    private static HistoryPageCache.Page page(long version, long createdAt) {
+        return new HistoryPageCache.Page(version, createdAt, "[]".getBytes(), "application/json", "W/\"c-1\"", false);
+    }
+}
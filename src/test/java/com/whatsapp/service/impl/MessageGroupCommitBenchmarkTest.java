@@ -0,0 +1,127 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sends the same burst of text messages through the per-call path (one transaction per send)
+ * and through group commit, and logs sends per second and latency percentiles for both.
+ * Runs against the in-memory test database by default, where a commit costs next to nothing,
+ * so it only checks that every send lands; point it at PostgreSQL (DATABASE_URL, without the
+ * test database replacement) and raise -Dbenchmark.sends for numbers worth comparing.
+ * Tagged so it only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "app.messages.group-commit.enabled=true")
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class MessageGroupCommitBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageGroupCommitBenchmarkTest.class);
+
+    private static final int SENDS = Integer.getInteger("benchmark.sends", 2000);
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 32);
+    private static final int CHATROOMS = 8;
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired
+    private MessageGroupCommitter messageGroupCommitter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private final List<long[]> rooms = new ArrayList<>();
+
+    @BeforeEach
+    void createChatrooms() {
+        for (int i = 0; i < CHATROOMS; i++) {
+            User sender = userRepository.save(TestUsers.user("bench-a-" + i + "-" + System.nanoTime()));
+            User recipient = userRepository.save(TestUsers.user("bench-b-" + i + "-" + System.nanoTime()));
+            Chatroom chatroom = chatroomRepository.save(new Chatroom(sender, recipient));
+            rooms.add(new long[]{chatroom.getId(), sender.getId()});
+        }
+    }
+
+    @Test
+    void groupCommitAgainstPerCallSends() throws Exception {
+        long before = messageRepository.count();
+
+        Result perCall = run("per-call", command -> messageBatchWriter.writeTextMessages(List.of(command)).get(0).getOrThrow());
+        Result grouped = run("group-commit", messageGroupCommitter::send);
+
+        assertThat(perCall.failures).isZero();
+        assertThat(grouped.failures).isZero();
+        assertThat(messageRepository.count() - before).isEqualTo(2L * SENDS);
+    }
+
+    private Result run(String name, Consumer<MessageBatchWriter.TextMessageCommand> send) throws Exception {
+        long[] latencies = new long[SENDS];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>(SENDS);
+        long start = System.nanoTime();
+        for (int i = 0; i < SENDS; i++) {
+            int index = i;
+            long[] room = rooms.get(i % CHATROOMS);
+            futures.add(executor.submit(() -> {
+                long sent = System.nanoTime();
+                send.accept(new MessageBatchWriter.TextMessageCommand(room[0], room[1], name + " message " + index, null));
+                latencies[index] = System.nanoTime() - sent;
+            }));
+        }
+        int failures = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get(60, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                if (failures++ == 0) {
+                    logger.error("{}: send failed", name, e);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        Arrays.sort(latencies);
+        logger.info("{}: {} sends on {} threads in {} ms, {} sends/s, latency p50 {} us, p99 {} us, max {} us",
+                name, SENDS, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                String.format("%.0f", SENDS / (elapsed / 1e9)),
+                TimeUnit.NANOSECONDS.toMicros(latencies[SENDS / 2]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[SENDS * 99 / 100]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[SENDS - 1]));
+        return new Result(failures);
+    }
+
+    private record Result(int failures) {
+    }
+}
@@ -0,0 +1,111 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.model.Attachment;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.Message;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.AttachmentRepository;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A history page is one projection query plus one attachment query, however many rows and senders it has.
+// Background flushes and the outbox relay are held off so that only the read touches the statistics
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.chatroom.activity.flush-interval-ms=3600000",
+        "app.outbox.poll-interval-ms=3600000"
+})
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class MessageHistoryQueryCountTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Chatroom chatroom;
+    private long newestId;
+    private long newestTextId;
+
+    @BeforeEach
+    void createMessages() {
+        List<User> senders = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            senders.add(userRepository.save(TestUsers.user("count-" + i + "-" + System.nanoTime())));
+        }
+        chatroom = chatroomRepository.save(new Chatroom(senders.get(0), senders.get(1)));
+        for (int i = 0; i < PAGE_SIZE + 5; i++) {
+            boolean media = i % 3 == 0;
+            Message message = messageRepository.save(new Message("message " + i,
+                    media ? Message.MessageType.IMAGE : Message.MessageType.TEXT, senders.get(i % senders.size()), chatroom));
+            if (media) {
+                attachmentRepository.save(new Attachment("photo" + i + ".jpg", "/uploads/photo" + i + ".jpg", "image/jpeg",
+                        1024L, Attachment.AttachmentType.IMAGE, message));
+            } else {
+                newestTextId = message.getId();
+            }
+            newestId = message.getId();
+        }
+        // Loads the room into the membership cache, as any earlier request would have
+        messageService.getChatroomHistory(chatroom.getId(), newestId + 1, null, null, 1);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void aHistoryPageLoadsSendersAndAttachmentsInTwoStatements() {
+        MessageHistoryDto page = messageService.getChatroomHistory(chatroom.getId(), newestId + 1, null, null, PAGE_SIZE);
+
+        List<MessageDto> messages = page.getMessages();
+        assertThat(messages).hasSize(PAGE_SIZE);
+        assertThat(messages).extracting(message -> message.getSender().getBio()).allMatch(bio -> bio.startsWith("bio of count-"));
+        assertThat(messages).filteredOn(message -> message.getMessageType() != Message.MessageType.TEXT)
+                .isNotEmpty()
+                .allMatch(message -> message.getAttachments().size() == 1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void aSingleTextMessageLoadsItsSenderWithIt() {
+        MessageDto message = messageService.getMessageById(newestTextId).orElseThrow();
+
+        assertThat(message.getSender().getBio()).startsWith("bio of count-");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,48 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.MessageHistoryDto;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class MessageHistoryTest {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Test
+    void historyPagesCarryTheSameSenderAsSingleMessages() {
+        User sender = userRepository.save(TestUsers.user("history-a-" + System.nanoTime()));
+        User recipient = userRepository.save(TestUsers.user("history-b-" + System.nanoTime()));
+        Chatroom chatroom = chatroomRepository.save(new Chatroom(sender, recipient));
+        MessageDto sent = messageService.sendTextMessage(chatroom.getId(), sender.getId(), "hello", null);
+
+        MessageDto single = messageService.getMessageById(sent.getId()).orElseThrow();
+        // "after" skips the recent-messages ring, so the page is read through the projection
+        MessageHistoryDto page = messageService.getChatroomHistory(chatroom.getId(), null, 0L, null, 10);
+
+        assertThat(page.getMessages()).hasSize(1);
+        assertThat(page.getMessages().get(0).getSender()).usingRecursiveComparison().isEqualTo(single.getSender());
+        assertThat(single.getSender().getBio()).isEqualTo("bio of " + sender.getUsername());
+        assertThat(single.getSender().getCreatedAt()).isNotNull();
+    }
+}
@@ -0,0 +1,206 @@
+package com.whatsapp.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.NotificationEvent;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.OutboxService;
+import com.whatsapp.util.BackgroundTaskRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MessageIngestQueueTest {
+
+    @TempDir
+    Path journalDir;
+
+    @Mock
+    private MessageBatchWriter messageBatchWriter;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private BackgroundTaskRunner backgroundTaskRunner = new BackgroundTaskRunner(false);
+
+    @InjectMocks
+    private MessageIngestQueue ingestQueue;
+
+    private final AtomicBoolean databaseDown = new AtomicBoolean();
+    private final Set<Long> rejectedIds = ConcurrentHashMap.newKeySet();
+    private final Set<Long> persistedIds = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void start() throws IOException {
+        ReflectionTestUtils.setField(ingestQueue, "enabled", true);
+        ReflectionTestUtils.setField(ingestQueue, "journalDir", journalDir.toString());
+        ReflectionTestUtils.setField(ingestQueue, "workerCount", 1);
+        ReflectionTestUtils.setField(ingestQueue, "batchSize", 10);
+        ReflectionTestUtils.setField(ingestQueue, "segmentBytes", 512L);
+        ReflectionTestUtils.setField(ingestQueue, "retryBackoffMs", 10L);
+        ReflectionTestUtils.setField(ingestQueue, "maxRetryBackoffMs", 50L);
+
+        when(messageRepository.findExistingIds(any())).thenReturn(List.of());
+        doAnswer(invocation -> write(invocation.getArgument(0))).when(messageBatchWriter).writeTextMessages(anyList());
+        doAnswer(invocation -> write(invocation.getArgument(0))).when(messageBatchWriter).writeTextMessages(anyList(), anyBoolean());
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        ingestQueue.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        ingestQueue.stop();
+    }
+
+    @Test
+    void settledSegmentsAreDeletedWhileAppendsContinue() throws IOException {
+        for (long id = 1; id <= 60; id++) {
+            ingestQueue.append(record(id));
+        }
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> persistedIds.size() == 60);
+        // Every segment but the one being appended to is gone
+        await().atMost(Duration.ofSeconds(10)).until(() -> segmentFiles().size() == 1);
+    }
+
+    @Test
+    void failedMessagesStayJournaledUntilTheyPersist() throws IOException {
+        databaseDown.set(true);
+        ingestQueue.append(record(1));
+        for (long id = 2; id <= 30; id++) {
+            ingestQueue.append(record(id)); // enough to rotate past the first segment
+        }
+
+        await().pollDelay(Duration.ofMillis(300)).atMost(Duration.ofSeconds(5)).until(() -> true);
+        assertThat(persistedIds).isEmpty();
+        assertThat(journaledText()).contains("\"id\":1,");
+
+        databaseDown.set(false);
+        await().atMost(Duration.ofSeconds(10)).until(() -> persistedIds.size() == 30);
+        await().atMost(Duration.ofSeconds(10)).until(() -> segmentFiles().size() == 1);
+        assertThat(journalDir.resolve("dead-letter.log")).doesNotExist();
+    }
+
+    @Test
+    void rejectedMessagesAreParkedAndTheSenderNotified() throws IOException {
+        User sender = new User("alice");
+        when(userRepository.findById(2L)).thenReturn(Optional.of(sender));
+        rejectedIds.add(7L);
+
+        ingestQueue.append(record(7));
+        ingestQueue.append(record(8));
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> Files.exists(journalDir.resolve("dead-letter.log")));
+        await().atMost(Duration.ofSeconds(10)).until(() -> persistedIds.contains(8L));
+        assertThat(Files.readString(journalDir.resolve("dead-letter.log"))).contains("\"id\":7,").contains("not a member");
+
+        ArgumentCaptor<NotificationEvent> notification = ArgumentCaptor.forClass(NotificationEvent.class);
+        verify(outboxService).enqueueNotificationEvent(notification.capture());
+        assertThat(notification.getValue().getEventType()).isEqualTo("MESSAGE_FAILED");
+        assertThat(notification.getValue().getRecipientUsername()).isEqualTo("alice");
+        assertThat(notification.getValue().getMessageId()).isEqualTo("7");
+    }
+
+    @Test
+    void aRetriedClientKeyGetsTheIdOfTheMessageStillJournaled() {
+        databaseDown.set(true);
+        assertThat(ingestQueue.append(new MessageIngestQueue.Record(1L, 1L, 2L, "hello", "key-1"))).isEqualTo(1L);
+        assertThat(ingestQueue.append(new MessageIngestQueue.Record(2L, 1L, 2L, "hello", "key-1"))).isEqualTo(1L);
+        assertThat(ingestQueue.pendingId(2L, "key-1")).contains(1L);
+
+        databaseDown.set(false);
+        await().atMost(Duration.ofSeconds(10)).until(() -> persistedIds.contains(1L));
+        // Stored now, so retries are answered from the dedupe cache or the database instead
+        await().atMost(Duration.ofSeconds(10)).until(() -> ingestQueue.pendingId(2L, "key-1").isEmpty());
+        assertThat(persistedIds).containsExactly(1L);
+    }
+
+    private List<MessageBatchWriter.WriteResult> write(List<MessageBatchWriter.TextMessageCommand> commands) {
+        if (databaseDown.get()) {
+            throw new RuntimeException("connection refused");
+        }
+        List<MessageBatchWriter.WriteResult> results = new ArrayList<>();
+        for (MessageBatchWriter.TextMessageCommand command : commands) {
+            if (rejectedIds.contains(command.getReservedId())) {
+                results.add(new MessageBatchWriter.WriteResult(null, new RuntimeException("User is not a member of this chatroom")));
+            } else {
+                persistedIds.add(command.getReservedId());
+                results.add(new MessageBatchWriter.WriteResult(new MessageDto(), null));
+            }
+        }
+        return results;
+    }
+
+    private static MessageIngestQueue.Record record(long id) {
+        return new MessageIngestQueue.Record(id, 1L, 2L, "message " + id, null);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("ingest-")).toList();
+        }
+    }
+
+    private String journaledText() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Path segment : segmentFiles()) {
+            text.append(Files.readString(segment));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.model.Attachment;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.Message;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.AttachmentRepository;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.MessageRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reads the same page of a chatroom through the entity path (getChatroomMessages: Message
+ * entities with their senders, copied into DTOs) and the projection path (getChatroomHistory:
+ * MessageView rows), and logs time and bytes allocated per page for both. Allocation is
+ * counted on the calling thread, which runs the whole read. Against the in-memory test
+ * database the database's own work is small, so the difference is mostly hydration; point it
+ * at PostgreSQL for end-to-end numbers. Tagged so it only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class MessageReadPathBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageReadPathBenchmarkTest.class);
+
+    private static final int MESSAGES = 2000;
+    private static final int PAGE_SIZE = Integer.getInteger("benchmark.page-size", 50);
+    private static final int PAGES = Integer.getInteger("benchmark.pages", 1000);
+    private static final int WARM_UP_PAGES = 200;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+
+    private Chatroom chatroom;
+
+    @BeforeEach
+    void createMessages() {
+        User alice = userRepository.save(TestUsers.user("read-a-" + System.nanoTime()));
+        User bob = userRepository.save(TestUsers.user("read-b-" + System.nanoTime()));
+        chatroom = chatroomRepository.save(new Chatroom(alice, bob));
+        List<Message> messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(new Message("message " + i + " with some text of a typical length",
+                    i % 5 == 0 ? Message.MessageType.IMAGE : Message.MessageType.TEXT, i % 2 == 0 ? alice : bob, chatroom));
+        }
+        messageRepository.saveAll(messages);
+        List<Attachment> attachments = new ArrayList<>();
+        for (Message message : messages) {
+            if (message.getMessageType() == Message.MessageType.IMAGE) {
+                attachments.add(new Attachment("photo.jpg", "/uploads/photo.jpg", "image/jpeg", 1024L,
+                        Attachment.AttachmentType.IMAGE, message));
+            }
+        }
+        attachmentRepository.saveAll(attachments);
+    }
+
+    @Test
+    void projectionAgainstEntityPages() {
+        long chatroomId = chatroom.getId();
+        // A sorted Pageable skips the recent-messages ring, so every entity page is read from the database
+        Pageable newest = PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "createdAt"));
+        // A before cursor is never served from the ring for a room it holds nothing of
+        Supplier<List<MessageDto>> entityPage = () -> messageService.getChatroomMessages(chatroomId, newest).getContent();
+        Supplier<List<MessageDto>> projectionPage = () -> messageService.getChatroomHistory(chatroomId, Long.MAX_VALUE, null, null, PAGE_SIZE)
+                .getMessages();
+
+        // Both read a full page; which rows differs only among messages created in the same millisecond
+        assertThat(entityPage.get()).hasSize(PAGE_SIZE);
+        assertThat(projectionPage.get()).hasSize(PAGE_SIZE);
+
+        Result entity = run("entity", entityPage);
+        Result projection = run("projection", projectionPage);
+        logger.info("projection / entity: time {}, allocation {}",
+                String.format("%.2f", projection.nanosPerPage / entity.nanosPerPage),
+                String.format("%.2f", (double) projection.bytesPerPage / entity.bytesPerPage));
+    }
+
+    private Result run(String name, Supplier<List<MessageDto>> page) {
+        for (int i = 0; i < WARM_UP_PAGES; i++) {
+            page.get();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        int rows = 0;
+        for (int i = 0; i < PAGES; i++) {
+            rows += page.get().size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        Result result = new Result((double) elapsed / PAGES, allocated / PAGES);
+        logger.info("{}: {} pages of {} rows, {} us/page, {} KiB allocated/page ({} bytes/row)",
+                name, PAGES, rows / PAGES, String.format("%.1f", result.nanosPerPage / 1000),
+                result.bytesPerPage / 1024, result.bytesPerPage / Math.max(1, rows / PAGES));
+        return result;
+    }
+
+    private record Result(double nanosPerPage, long bytesPerPage) {
+    }
+}
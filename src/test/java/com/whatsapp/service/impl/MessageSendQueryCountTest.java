@@ -0,0 +1,61 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Background flushes and the outbox relay are held off so that only the send touches the statistics
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.chatroom.activity.flush-interval-ms=3600000",
+        "app.outbox.poll-interval-ms=3600000"
+})
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class MessageSendQueryCountTest {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void aWarmSendReadsWithOneSelect() {
+        User sender = userRepository.save(TestUsers.user("send-a-" + System.nanoTime()));
+        User recipient = userRepository.save(TestUsers.user("send-b-" + System.nanoTime()));
+        Chatroom chatroom = chatroomRepository.save(new Chatroom(sender, recipient));
+        // The first send fills the membership cache
+        messageService.sendTextMessage(chatroom.getId(), sender.getId(), "warm up", null);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        messageService.sendTextMessage(chatroom.getId(), sender.getId(), "hello", null);
+
+        // One SELECT for sender and recipient; the rest are the message INSERT and one batched INSERT of its two outbox events
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(2);
+        assertThat(statistics.getEntityFetchCount()).isZero();
+        assertThat(statistics.getCollectionFetchCount()).isZero();
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+}
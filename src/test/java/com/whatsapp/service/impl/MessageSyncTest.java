@@ -0,0 +1,122 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import com.whatsapp.dto.SyncRequest;
+import com.whatsapp.dto.SyncResponse;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import com.whatsapp.util.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class MessageSyncTest {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    private User reader;
+    private Chatroom first;
+    private Chatroom second;
+
+    @BeforeEach
+    void createChatrooms() {
+        reader = userRepository.save(TestUsers.user("sync-a-" + System.nanoTime()));
+        User other = userRepository.save(TestUsers.user("sync-b-" + System.nanoTime()));
+        User third = userRepository.save(TestUsers.user("sync-c-" + System.nanoTime()));
+        first = chatroomRepository.save(new Chatroom(reader, other));
+        second = chatroomRepository.save(new Chatroom(third, reader));
+    }
+
+    @Test
+    void eachRoomIsReadFromItsOwnWatermark() {
+        long firstOld = send(first, reader, "first old", null);
+        send(second, reader, "second old", null);
+        long firstNew = send(first, reader, "first new", null);
+        long secondNew = send(second, reader, "second new", null);
+
+        SyncRequest request = new SyncRequest();
+        request.setUserId(reader.getId());
+        request.setRooms(Map.of(first.getId(), firstOld, second.getId(), secondNew));
+        SyncResponse response = messageService.syncMessages(request);
+
+        assertThat(response.getMessages()).extracting(MessageDto::getId).containsExactly(firstNew);
+        assertThat(response.isHasMore()).isFalse();
+    }
+
+    @Test
+    void aMessagePersistedAfterItsIdIsDeliveredToWatermarksPastIt() {
+        send(first, reader, "before", null);
+        long watermark = SnowflakeIdGenerator.minIdAt(Instant.now().minusSeconds(60));
+        // An ID reserved two minutes ago, as the ingest queue does for a send it is still retrying
+        long reserved = SnowflakeIdGenerator.minIdAt(Instant.now().minusSeconds(120)) + 1;
+        send(first, reader, "retried", reserved);
+
+        SyncRequest request = new SyncRequest();
+        request.setUserId(reader.getId());
+        request.setSince(watermark);
+        SyncResponse response = messageService.syncMessages(request);
+
+        assertThat(response.getMessages()).extracting(MessageDto::getId).contains(reserved);
+        assertThat(response.getChanges()).isEmpty();
+    }
+
+    @Test
+    void messagesAndChangesShareOneLimitInIdOrder() {
+        long watermark = send(first, reader, "start", null);
+        long edited = send(first, reader, "draft", null);
+        long later = send(second, reader, "later", null);
+        messageService.editMessage(edited, reader.getId(), "final");
+
+        SyncRequest request = new SyncRequest();
+        request.setUserId(reader.getId());
+        request.setSince(watermark);
+        request.setLimit(2);
+        SyncResponse page = messageService.syncMessages(request);
+
+        assertThat(page.getMessages()).extracting(MessageDto::getId).containsExactly(edited, later);
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.isHasMore()).isTrue();
+
+        request.setSince(page.getWatermark());
+        SyncResponse next = messageService.syncMessages(request);
+
+        assertThat(next.getMessages()).isEmpty();
+        assertThat(next.getChanges()).singleElement().satisfies(change -> {
+            assertThat(change.getMessageId()).isEqualTo(edited);
+            assertThat(change.getContent()).isEqualTo("final");
+        });
+        assertThat(next.isHasMore()).isFalse();
+    }
+
+    private long send(Chatroom chatroom, User sender, String content, Long reservedId) {
+        MessageBatchWriter.TextMessageCommand command =
+                new MessageBatchWriter.TextMessageCommand(chatroom.getId(), sender.getId(), content, null, reservedId);
+        List<MessageBatchWriter.WriteResult> results = messageBatchWriter.writeTextMessages(List.of(command));
+        return results.get(0).getOrThrow().getId();
+    }
+}
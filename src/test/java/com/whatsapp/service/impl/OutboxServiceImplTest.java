@@ -0,0 +1,137 @@
+package com.whatsapp.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp.model.OutboxEvent;
+import com.whatsapp.repository.OutboxEventRepository;
+import com.whatsapp.service.KafkaService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxServiceImplTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private KafkaService kafkaService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @InjectMocks
+    private OutboxServiceImpl outboxService;
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(outboxService, "batchSize", 10);
+        ReflectionTestUtils.setField(outboxService, "sendTimeoutMs", 200L);
+        ReflectionTestUtils.setField(outboxService, "claimLeaseMs", 1000L);
+        ReflectionTestUtils.setField(outboxService, "transactionTemplate", new TransactionTemplate(transactionManager));
+    }
+
+    @Test
+    void deletesOnlyAcknowledgedEvents() {
+        when(outboxEventRepository.lockNextBatch(any(), eq(10))).thenReturn(List.of(
+                event(1L, "{\"eventType\":\"MESSAGE_SENT\"}"),
+                event(2L, "{\"eventType\":\"MESSAGE_SENT\"}"),
+                event(3L, "{\"eventType\":\"MESSAGE_SENT\"}")));
+        when(kafkaService.sendMessageEvent(any())).thenReturn(
+                CompletableFuture.completedFuture(null),
+                CompletableFuture.failedFuture(new RuntimeException("broker unavailable")),
+                new CompletableFuture<>()); // never acknowledged
+
+        int relayed = outboxService.relayBatch();
+
+        ArgumentCaptor<List<Long>> deleted = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository).deleteAllByIdInBatch(deleted.capture());
+        assertThat(deleted.getValue()).containsExactly(1L);
+        verify(outboxEventRepository).claim(List.of(2L, 3L), null);
+        assertThat(relayed).isEqualTo(1);
+    }
+
+    @Test
+    void claimsTheBatchBeforeSendingAndOutsideTheSendingTransaction() {
+        when(outboxEventRepository.lockNextBatch(any(), eq(10))).thenReturn(List.of(event(1L, "{\"eventType\":\"MESSAGE_SENT\"}")));
+        when(kafkaService.sendMessageEvent(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        outboxService.relayBatch();
+
+        InOrder order = inOrder(transactionManager, outboxEventRepository, kafkaService);
+        order.verify(outboxEventRepository).claim(eq(List.of(1L)), notNull());
+        order.verify(transactionManager).commit(any());
+        order.verify(kafkaService).sendMessageEvent(any());
+        order.verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+    }
+
+    @Test
+    void startsNoSendsOnceTheDeadlineHasPassed() {
+        when(outboxEventRepository.lockNextBatch(any(), eq(10))).thenReturn(List.of(
+                event(1L, "{\"eventType\":\"MESSAGE_SENT\"}"),
+                event(2L, "{\"eventType\":\"MESSAGE_SENT\"}")));
+        // The first send blocks past the deadline, as a producer without metadata would
+        when(kafkaService.sendMessageEvent(any())).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        int relayed = outboxService.relayBatch();
+
+        verify(kafkaService, times(1)).sendMessageEvent(any());
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+        verify(outboxEventRepository).claim(List.of(2L), null);
+        assertThat(relayed).isEqualTo(1);
+    }
+
+    @Test
+    void discardsUnreadablePayloads() {
+        when(outboxEventRepository.lockNextBatch(any(), eq(10))).thenReturn(List.of(event(1L, "not json")));
+
+        outboxService.relayBatch();
+
+        verify(kafkaService, never()).sendMessageEvent(any());
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+    }
+
+    @Test
+    void keepsEverythingWhenNothingIsAcknowledged() {
+        when(outboxEventRepository.lockNextBatch(any(), eq(10))).thenReturn(List.of(event(1L, "{\"eventType\":\"MESSAGE_SENT\"}")));
+        when(kafkaService.sendMessageEvent(any())).thenReturn(CompletableFuture.failedFuture(new RuntimeException("down")));
+
+        assertThat(outboxService.relayBatch()).isZero();
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+        verify(outboxEventRepository).claim(List.of(1L), null);
+    }
+
+    private static OutboxEvent event(Long id, String payload) {
+        OutboxEvent event = new OutboxEvent(OutboxEvent.EventKind.MESSAGE, payload);
+        event.setId(id);
+        return event;
+    }
+}
@@ -0,0 +1,81 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.SearchHit;
+import com.whatsapp.repository.MessageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PostgresMessageSearchEngineTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @InjectMocks
+    private PostgresMessageSearchEngine engine;
+
+    @Test
+    void everyWordIsMatchedAsAPrefix() {
+        assertThat(PostgresMessageSearchEngine.toPrefixQuery(List.of("hello", "wor"))).isEqualTo("hello:* & wor:*");
+        assertThat(PostgresMessageSearchEngine.toPrefixQuery(List.of("über", "42"))).isEqualTo("über:* & 42:*");
+    }
+
+    @Test
+    void tsqueryOperatorsAndQuotesNeverReachTheQuery() {
+        assertThat(PostgresMessageSearchEngine.toPrefixQuery(List.of("it's"))).isEqualTo("it:* & s:*");
+        assertThat(PostgresMessageSearchEngine.toPrefixQuery(List.of("a&b", "c|d", "!e"))).isEqualTo("a:* & b:* & c:* & d:* & e:*");
+        assertThat(PostgresMessageSearchEngine.toPrefixQuery(List.of("wor:*", "(x)", "<->y", "\\z"))).isEqualTo("wor:* & x:* & y:* & z:*");
+        assertThat(PostgresMessageSearchEngine.toPrefixQuery(List.of("'", "&", ":*"))).isEmpty();
+    }
+
+    @Test
+    void chatroomSearchPassesTheEscapedQuery() {
+        when(messageRepository.searchIdsInChatroom(eq(7L), anyString(), any())).thenReturn(List.of(1L));
+
+        assertThat(engine.search(7L, List.of("o'neil"), 2, 10)).containsExactly(1L);
+
+        verify(messageRepository).searchIdsInChatroom(7L, "o:* & neil:*", PageRequest.of(2, 10));
+    }
+
+    @Test
+    void userSearchMapsRankedRowsToHits() {
+        when(messageRepository.searchForUser(eq(3L), eq("hi:*"), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{5L, 0.25f}));
+
+        assertThat(engine.searchForUser(3L, List.of("hi"), null, 20)).containsExactly(new SearchHit(5L, 0.25));
+    }
+
+    @Test
+    void aQueryOfOnlyOperatorsReturnsNothingWithoutQuerying() {
+        assertThat(engine.search(7L, List.of("&", ":*"), 0, 10)).isEmpty();
+        assertThat(engine.searchForUser(3L, List.of("'"), new SearchHit(1L, 0.5), 10)).isEmpty();
+
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void aCursorContinuesAfterTheLastHit() {
+        when(messageRepository.searchForUserAfter(anyLong(), anyString(), anyDouble(), anyLong(), any()))
+                .thenReturn(List.of());
+
+        engine.searchForUser(3L, List.of("hi"), new SearchHit(9L, 0.5), 20);
+
+        verify(messageRepository).searchForUserAfter(3L, "hi:*", 0.5, 9L, PageRequest.of(0, 20));
+    }
+}
@@ -0,0 +1,62 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentMessagesCacheTest {
+
+    private final RecentMessagesCache cache = new RecentMessagesCache();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(cache, "roomCapacity", 3);
+        ReflectionTestUtils.setField(cache, "maxBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+    }
+
+    @Test
+    void ringsAnswerTheLatestMessagesOfTheirRoomOnly() {
+        cache.load(1L, cache.generation(1L), List.of(message(1L, 12L), message(1L, 11L), message(1L, 10L)));
+        cache.load(65L, cache.generation(65L), List.of(message(65L, 20L))); // same segment as room 1
+        cache.addAfterCommit(message(1L, 13L));
+
+        assertThat(cache.findBefore(1L, null, 2)).hasValueSatisfying(messages ->
+                assertThat(messages).extracting(MessageDto::getId).containsExactly(13L, 12L));
+        assertThat(cache.findBefore(65L, null, 5)).hasValueSatisfying(messages ->
+                assertThat(messages).extracting(MessageDto::getId).containsExactly(20L));
+        // Message 10 was pushed out, so the ring cannot answer a window reaching it
+        assertThat(cache.findBefore(1L, 12L, 2)).isEmpty();
+    }
+
+    @Test
+    void ringsOlderThanTheTtlAreDropped() {
+        ReflectionTestUtils.setField(cache, "ttlMs", -1L);
+        cache.load(1L, cache.generation(1L), List.of(message(1L, 10L)));
+
+        assertThat(cache.findBefore(1L, null, 1)).isEmpty();
+        assertThat(cache.contains(1L)).isFalse();
+    }
+
+    @Test
+    void aLoadThatRacedAWriteIsNotInstalled() {
+        long generation = cache.generation(1L);
+        cache.removeAfterCommit(1L, 10L);
+        cache.load(1L, generation, List.of(message(1L, 10L)));
+
+        assertThat(cache.contains(1L)).isFalse();
+    }
+
+    private static MessageDto message(long chatroomId, long id) {
+        MessageDto message = new MessageDto();
+        message.setId(id);
+        message.setChatroomId(chatroomId);
+        message.setContent("message " + id);
+        return message;
+    }
+}
@@ -0,0 +1,60 @@
+package com.whatsapp.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchSegmentTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void valuesStraddlingChunkBoundariesReadTheSameAsFromOneMapping() throws IOException {
+        Path path = directory.resolve("segment-0000000001.idx");
+        try (SearchSegment.Writer writer = new SearchSegment.Writer(path, 7)) {
+            for (long chatroomId = 1; chatroomId <= 20; chatroomId++) {
+                for (int word = 0; word < 10; word++) {
+                    byte[] term = ("word" + word + "-" + "x".repeat(word * 3)).getBytes(StandardCharsets.UTF_8);
+                    long[] messageIds = {chatroomId * 1_000_000_007L, chatroomId * 1_000_000_007L + word + 1};
+                    writer.add(chatroomId, term, messageIds, new int[]{word + 1, 1}, 2);
+                }
+            }
+            writer.finish(new long[]{3L, 1L << 40}, new long[]{5L});
+        }
+
+        SearchSegment whole = SearchSegment.open(path);
+        // 64-byte chunks put many terms, varints and index entries across a boundary
+        SearchSegment chunked = SearchSegment.open(path, 6);
+
+        assertThat(chunked.seq()).isEqualTo(7);
+        assertThat(chunked.termCount()).isEqualTo(whole.termCount()).isEqualTo(200);
+        for (int entry = 0; entry < whole.termCount(); entry++) {
+            assertThat(chunked.chatroomIdAt(entry)).isEqualTo(whole.chatroomIdAt(entry));
+            assertThat(chunked.termAt(entry)).isEqualTo(whole.termAt(entry));
+            assertThat(postings(chunked, entry)).isEqualTo(postings(whole, entry));
+        }
+        byte[] prefix = "word4".getBytes(StandardCharsets.UTF_8);
+        int entry = chunked.lowerBound(12, prefix);
+        assertThat(chunked.hasPrefix(entry, 12, prefix)).isTrue();
+        assertThat(postings(chunked, entry)).containsExactly(12 * 1_000_000_007L, 5L, 12 * 1_000_000_007L + 5, 1L);
+        assertThat(chunked.deletedIds()).containsExactly(3L, 1L << 40);
+        assertThat(chunked.replacedIds()).containsExactly(5L);
+    }
+
+    private static List<Long> postings(SearchSegment segment, int entry) {
+        List<Long> postings = new ArrayList<>();
+        segment.forEachPosting(entry, (messageId, frequency) -> {
+            postings.add(messageId);
+            postings.add((long) frequency);
+        });
+        return postings;
+    }
+}
@@ -0,0 +1,17 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.model.User;
+
+public final class TestUsers {
+
+    private TestUsers() {
+    }
+
+    public static User user(String username) {
+        User user = new User(username, "bio of " + username);
+        user.setPassword("password");
+        user.setEmail(username + "@example.com");
+        user.setFullName(username);
+        return user;
+    }
+}
@@ -0,0 +1,91 @@
+package com.whatsapp.service.impl;
+
+import com.whatsapp.dto.MessageSearchResultDto;
+import com.whatsapp.model.Chatroom;
+import com.whatsapp.model.User;
+import com.whatsapp.repository.ChatroomRepository;
+import com.whatsapp.repository.UserRepository;
+import com.whatsapp.service.MessageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The embedded engine tails the messages table held back by the commit grace; a short one keeps the wait short
+@SpringBootTest(properties = {
+        "app.search.engine=embedded",
+        "app.search.embedded.poll-interval-ms=50",
+        "app.sync.commit-grace-ms=300"
+})
+@AutoConfigureTestDatabase
+@ActiveProfiles("test")
+class UserMessageSearchTest {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatroomRepository chatroomRepository;
+
+    // A fresh index per context: chatroom IDs restart with the in-memory database
+    @DynamicPropertySource
+    static void indexDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("search-index").toString();
+        registry.add("app.search.embedded.index-dir", () -> directory);
+    }
+
+    @Test
+    void searchSpansTheUsersRoomsBestMatchFirstAndPagesByCursor() throws InterruptedException {
+        User searcher = userRepository.save(TestUsers.user("search-a-" + System.nanoTime()));
+        User friend = userRepository.save(TestUsers.user("search-b-" + System.nanoTime()));
+        User stranger = userRepository.save(TestUsers.user("search-c-" + System.nanoTime()));
+        Chatroom first = chatroomRepository.save(new Chatroom(searcher, friend));
+        Chatroom second = chatroomRepository.save(new Chatroom(stranger, searcher));
+        Chatroom elsewhere = chatroomRepository.save(new Chatroom(friend, stranger));
+
+        long once = send(first, friend, "Pizza tonight?");
+        long twice = send(first, searcher, "pizza, pizza and more pizza");
+        long newestOnce = send(second, stranger, "leftover pizzas");
+        send(elsewhere, friend, "pizza without the searcher");
+        send(second, searcher, "nothing to see");
+
+        awaitIndexed(searcher.getId(), "piz", 3);
+        List<Long> found = new ArrayList<>();
+        String cursor = null;
+        do {
+            MessageSearchResultDto page = messageService.searchUserMessages(searcher.getId(), "piz", cursor, 2);
+            page.getMessages().forEach(message -> found.add(message.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        // Three occurrences rank first; among single matches the newest comes first
+        assertThat(found).containsExactly(twice, newestOnce, once);
+    }
+
+    private void awaitIndexed(Long userId, String term, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (messageService.searchUserMessages(userId, term, null, expected + 1).getMessages().size() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Messages were not indexed in time");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private long send(Chatroom chatroom, User sender, String content) {
+        return messageService.sendTextMessage(chatroom.getId(), sender.getId(), content, null).getId();
+    }
+}